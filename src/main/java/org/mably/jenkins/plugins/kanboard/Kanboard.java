@@ -1,8 +1,13 @@
 package org.mably.jenkins.plugins.kanboard;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -13,15 +18,14 @@ import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
 import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
 
 import hudson.AbortException;
+import hudson.FilePath;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 
 public class Kanboard {
 
 	private static final String BLOB = "blob";
-	private static final String COLOR_ID = "color_id";
 	private static final String DEPENDENCY = "dependency";
-	private static final String DESCRIPTION = "description";
 	private static final String FILE_ID = "file_id";
 	private static final String FILENAME = "filename";
 	private static final String IDENTIFIER = "identifier";
@@ -52,12 +56,20 @@ public class Kanboard {
 	private static final String SEARCH_TASKS = "searchTasks";
 	private static final String UPDATE_TASK = "updateTask";
 
+	private static final Set<String> READ_ONLY_METHODS = Collections.unmodifiableSet(new HashSet<String>(
+			Arrays.asList(DOWNLOAD_TASK_FILE, GET_ALL_EXTERNAL_TASK_LINKS, GET_ALL_SUBTASKS, GET_ALL_TASK_FILES,
+					GET_COLUMNS, GET_PROJECT_BY_IDENTIFIER, GET_TASK, GET_TASK_BY_REFERENCE, GET_TASK_TAGS, GET_USER,
+					GET_USER_BY_NAME, GET_VERSION, SEARCH_TASKS)));
+
+	static final String COLOR_ID = "color_id";
 	static final String COLUMN_ID = "column_id";
 	static final String CONTENT = "content";
 	static final String CREATOR_ID = "creator_id";
+	static final String DATE = "date";
 	static final String DATE_CREATION = "date_creation";
 	static final String DATE_MOVED = "date_moved";
 	static final String DEPENDENCY_RELATED = "related";
+	static final String DESCRIPTION = "description";
 	static final String ID = "id";
 	static final String LINK_TYPE = "link_type";
 	static final String LINKTYPE_ATTACHMENT = "attachment";
@@ -69,6 +81,7 @@ public class Kanboard {
 	static final String OWNER_ID = "owner_id";
 	static final String POSITION = "position";
 	static final String REFERENCE = "reference";
+	static final String SIZE = "size";
 	static final String SWIMLANE_ID = "swimlane_id";
 	static final String TAGS = "tags";
 	static final String TITLE = "title";
@@ -107,25 +120,8 @@ public class Kanboard {
 			params.put(USER_ID, userId);
 		}
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static boolean createExternalTaskLink(JSONRPC2Session session, PrintStream logger, Object taskId,
@@ -153,25 +149,9 @@ public class Kanboard {
 			params.put(CREATOR_ID, creatorId);
 		}
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return true;
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		return true;
 	}
 
 	public static Object createSubtask(JSONRPC2Session session, PrintStream logger, Object taskId, Object userId,
@@ -187,25 +167,8 @@ public class Kanboard {
 			params.put(USER_ID, userId);
 		}
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static Object createTask(JSONRPC2Session session, PrintStream logger, Object projectId, String taskRefValue,
@@ -253,25 +216,8 @@ public class Kanboard {
 			params.put(TAGS, taskTags);
 		}
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static boolean createTaskFile(JSONRPC2Session session, PrintStream logger, Object projectId, Object taskId,
@@ -287,25 +233,35 @@ public class Kanboard {
 		params.put(FILENAME, filename);
 		params.put(BLOB, encodedFile);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
+		send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		return true;
+	}
 
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return true;
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+	/**
+	 * Uploads a file, its content being read from the node holding it and
+	 * Base64 encoded while it is sent.
+	 *
+	 * @param fileLength
+	 *            length of the file
+	 * @return the id of the new file, or false if Kanboard couldn't create it
+	 */
+	public static Object createTaskFile(JSONRPC2Session session, PrintStream logger, Object projectId, Object taskId,
+			String filename, FilePath file, long fileLength, Object creatorId, boolean debugMode)
+			throws JSONRPC2SessionException, AbortException, IOException, InterruptedException {
+
+		// Construct new createTaskFile request, without the file content
+		String method = CREATE_TASK_FILE;
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(PROJECT_ID, projectId);
+		params.put(TASK_ID, taskId);
+
+		params.put(FILENAME, filename);
+
+		// Send request
+		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
+		KanboardCall call = new KanboardCall(session, logger, request, debugMode);
+		return send(call.withRequestBody(new KanboardBase64FileBody(request, BLOB, file, fileLength)));
 	}
 
 	public static String downloadTaskFile(JSONRPC2Session session, PrintStream logger, String fileId, boolean debugMode)
@@ -316,27 +272,29 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(FILE_ID, Integer.valueOf(fileId));
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode && (logger != null)) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode && (logger != null)) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
+		Object result = send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		return String.valueOf(result);
+	}
 
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return String.valueOf(response.getResult());
-		} else {
-			if (debugMode && (logger != null)) {
-				logger.println(response.getError().getMessage());
-			}
-			throw new AbortException(response.getError().getMessage());
-		}
+	/**
+	 * Downloads a task file straight into the given file, its Base64 content
+	 * being decoded as the response is received.
+	 *
+	 * @return the number of bytes written, -1 if Kanboard returned no content
+	 */
+	public static long downloadTaskFile(JSONRPC2Session session, PrintStream logger, String fileId, FilePath file,
+			boolean debugMode) throws AbortException, JSONRPC2SessionException {
+
+		// Construct new downloadTaskFile request
+		String method = DOWNLOAD_TASK_FILE;
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(FILE_ID, Integer.valueOf(fileId));
+
+		// Send request
+		KanboardCall call = new KanboardCall(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		Object result = send(call.withResultHandler(new KanboardBase64FileHandler(file)));
+		return (result instanceof Long) ? ((Long) result).longValue() : -1;
 	}
 
 	public static JSONArray getAllExternalTaskLinks(JSONRPC2Session session, PrintStream logger, Object taskId,
@@ -347,25 +305,8 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(TASK_ID, taskId);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONArray) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONArray) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static Object getAllSubtasks(JSONRPC2Session session, PrintStream logger, Object taskId, boolean debugMode)
@@ -376,25 +317,8 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(TASK_ID, taskId);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static JSONArray getAllTaskFiles(JSONRPC2Session session, PrintStream logger, Object taskId,
@@ -405,25 +329,8 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(TASK_ID, taskId);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONArray) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONArray) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static JSONObject getProjectByIdentifier(JSONRPC2Session session, PrintStream logger,
@@ -433,25 +340,8 @@ public class Kanboard {
 		Map<String, Object> params = new HashMap<String, Object>();
 		params.put(IDENTIFIER, projectIdentifierValue);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONObject) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONObject) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static JSONArray getProjectColumns(JSONRPC2Session session, PrintStream logger, Object projectId,
@@ -462,31 +352,8 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(PROJECT_ID, projectId);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			JSONArray projectColumns;
-			if (response.getResult() == null) {
-				projectColumns = null;
-			} else {
-				projectColumns = (JSONArray) response.getResult();
-			}
-			return projectColumns;
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONArray) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static JSONObject getTask(JSONRPC2Session session, PrintStream logger, Object taskId, boolean debugMode)
@@ -497,25 +364,8 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(TASK_ID, taskId);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONObject) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONObject) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static JSONObject getTaskByReference(JSONRPC2Session session, PrintStream logger, Object projectId,
@@ -527,25 +377,8 @@ public class Kanboard {
 		params.put(PROJECT_ID, projectId);
 		params.put(REFERENCE, taskRefValue);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONObject) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONObject) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static JSONObject getTaskTags(JSONRPC2Session session, PrintStream logger, Object taskId, boolean debugMode)
@@ -556,25 +389,8 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(TASK_ID, taskId);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONObject) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONObject) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static JSONObject getUser(JSONRPC2Session session, PrintStream logger, Object userId, boolean debugMode)
@@ -585,25 +401,8 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(USER_ID, userId);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONObject) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONObject) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static JSONObject getUserByName(JSONRPC2Session session, PrintStream logger, String username,
@@ -614,25 +413,8 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(USERNAME, username);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONObject) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		return (JSONObject) send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
 	}
 
 	public static String getVersion(JSONRPC2Session session, PrintStream logger, boolean debugMode)
@@ -642,27 +424,9 @@ public class Kanboard {
 		String method = GET_VERSION;
 		HashMap<String, Object> params = new HashMap<String, Object>();
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode && (logger != null)) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode && (logger != null)) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return String.valueOf(response.getResult());
-		} else {
-			if (debugMode && (logger != null)) {
-				logger.println(response.getError().getMessage());
-			}
-			throw new AbortException(response.getError().getMessage());
-		}
+		Object result = send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		return String.valueOf(result);
 	}
 
 	public static boolean moveTaskPosition(JSONRPC2Session session, PrintStream logger, Object projectId,
@@ -680,25 +444,9 @@ public class Kanboard {
 			params.put(SWIMLANE_ID, swimlaneId);
 		}
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return true;
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		return true;
 	}
 
 	public static boolean removeTaskFile(JSONRPC2Session session, PrintStream logger, Object fileId, boolean debugMode)
@@ -709,29 +457,25 @@ public class Kanboard {
 		HashMap<String, Object> params = new HashMap<String, Object>();
 		params.put(FILE_ID, fileId);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return true;
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		return true;
 	}
 
 	public static JSONArray searchTasks(JSONRPC2Session session, PrintStream logger, Object projectId, String query,
 			boolean debugMode) throws AbortException, JSONRPC2SessionException {
+		return searchTasks(session, logger, projectId, query, null, debugMode);
+	}
+
+	/**
+	 * Searches tasks, the response being parsed as it is received and only
+	 * the given fields of each task being kept.
+	 *
+	 * @param fields
+	 *            task fields to keep, all the fields are kept if null
+	 */
+	public static JSONArray searchTasks(JSONRPC2Session session, PrintStream logger, Object projectId, String query,
+			String[] fields, boolean debugMode) throws AbortException, JSONRPC2SessionException {
 
 		// Construct new searchTasks request
 		String method = SEARCH_TASKS;
@@ -739,25 +483,14 @@ public class Kanboard {
 		params.put(PROJECT_ID, projectId);
 		params.put(QUERY, query);
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
+		KanboardJsonReader.ResultHandler resultHandler = null;
+		if (fields != null) {
+			resultHandler = KanboardJsonReader.projection(fields);
 		}
 
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
-		}
-
-		// Print response result / error
-		if (response.indicatesSuccess()) {
-			return (JSONArray) response.getResult();
-		} else {
-			logger.println(response.getError().getMessage());
-			throw new AbortException(response.getError().getMessage());
-		}
+		KanboardCall call = new KanboardCall(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		return (JSONArray) send(call.withResultHandler(resultHandler));
 	}
 
 	public static boolean updateTask(JSONRPC2Session session, PrintStream logger, Object taskId, Object ownerId,
@@ -776,27 +509,135 @@ public class Kanboard {
 			params.put(TAGS, taskTags);
 		}
 
-		JSONRPC2Request request = new JSONRPC2Request(method, params, 0);
-		if (debugMode) {
-			logger.println(request.toJSONString());
-		}
-
 		// Send request
-		JSONRPC2Response response = session.send(request);
-		if (debugMode) {
-			logger.println(response.toJSONString());
-			logger.println(Utils.LOG_SEPARATOR);
+		send(session, logger, new JSONRPC2Request(method, params, 0), debugMode);
+		return true;
+	}
+
+	public static KanboardBatch.Call<JSONArray> getAllExternalTaskLinks(KanboardBatch batch, Object taskId) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(TASK_ID, taskId);
+		return batch.add(GET_ALL_EXTERNAL_TASK_LINKS, params, JSONArray.class);
+	}
+
+	public static KanboardBatch.Call<Object> getAllSubtasks(KanboardBatch batch, Object taskId) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(TASK_ID, taskId);
+		return batch.add(GET_ALL_SUBTASKS, params, Object.class);
+	}
+
+	public static KanboardBatch.Call<JSONArray> getAllTaskFiles(KanboardBatch batch, Object taskId) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(TASK_ID, taskId);
+		return batch.add(GET_ALL_TASK_FILES, params, JSONArray.class);
+	}
+
+	public static KanboardBatch.Call<JSONArray> getProjectColumns(KanboardBatch batch, Object projectId) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(PROJECT_ID, projectId);
+		return batch.add(GET_COLUMNS, params, JSONArray.class);
+	}
+
+	public static KanboardBatch.Call<JSONObject> getTask(KanboardBatch batch, Object taskId) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(TASK_ID, taskId);
+		return batch.add(GET_TASK, params, JSONObject.class);
+	}
+
+	public static KanboardBatch.Call<JSONObject> getTaskByReference(KanboardBatch batch, Object projectId,
+			String taskRefValue) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(PROJECT_ID, projectId);
+		params.put(REFERENCE, taskRefValue);
+		return batch.add(GET_TASK_BY_REFERENCE, params, JSONObject.class);
+	}
+
+	public static KanboardBatch.Call<JSONObject> getTaskTags(KanboardBatch batch, Object taskId) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(TASK_ID, taskId);
+		return batch.add(GET_TASK_TAGS, params, JSONObject.class);
+	}
+
+	public static KanboardBatch.Call<JSONObject> getUser(KanboardBatch batch, Object userId) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(USER_ID, userId);
+		return batch.add(GET_USER, params, JSONObject.class);
+	}
+
+	public static KanboardBatch.Call<JSONObject> getUserByName(KanboardBatch batch, String username) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(USERNAME, username);
+		return batch.add(GET_USER_BY_NAME, params, JSONObject.class);
+	}
+
+	public static KanboardBatch.Call<Boolean> moveTaskPosition(KanboardBatch batch, Object projectId, Object taskId,
+			Object newColumnId, Object newPosition, Object swimlaneId) {
+		HashMap<String, Object> params = new HashMap<String, Object>();
+		params.put(PROJECT_ID, projectId);
+		params.put(TASK_ID, taskId);
+		params.put(COLUMN_ID, newColumnId);
+		params.put(POSITION, newPosition);
+		if (swimlaneId != null && StringUtils.isNotBlank(String.valueOf(swimlaneId))) {
+			params.put(SWIMLANE_ID, swimlaneId);
 		}
+		return batch.add(MOVE_TASK_POSITION, params, Boolean.class);
+	}
+
+	/**
+	 * @param changes
+	 *            the task fields to update, by name
+	 */
+	public static KanboardBatch.Call<Boolean> updateTask(KanboardBatch batch, Object taskId,
+			Map<String, Object> changes) {
+		HashMap<String, Object> params = new HashMap<String, Object>(changes);
+		params.put(ID, taskId);
+		return batch.add(UPDATE_TASK, params, Boolean.class);
+	}
+
+	/**
+	 * Sends a request through the {@link KanboardInterceptor} chain.
+	 *
+	 * @return the request result
+	 * @throws AbortException
+	 *             if Kanboard returned an error
+	 */
+	static Object send(JSONRPC2Session session, PrintStream logger, JSONRPC2Request request, boolean debugMode)
+			throws JSONRPC2SessionException, AbortException {
+
+		return send(new KanboardCall(session, logger, request, debugMode));
+	}
+
+	/**
+	 * Sends a call through the {@link KanboardInterceptor} chain.
+	 *
+	 * @return the call result
+	 * @throws AbortException
+	 *             if Kanboard returned an error
+	 */
+	static Object send(KanboardCall call) throws JSONRPC2SessionException, AbortException {
+
+		JSONRPC2Response response = call.proceed();
 
 		// Print response result / error
 		if (response.indicatesSuccess()) {
-			return true;
+			return response.getResult();
 		} else {
-			logger.println(response.getError().getMessage());
+			PrintStream logger = call.getLogger();
+			if (logger != null) {
+				logger.println(response.getError().getMessage());
+			}
 			throw new AbortException(response.getError().getMessage());
 		}
 	}
 
+	/**
+	 * @return true if the given API method doesn't modify anything and can
+	 *         safely be retried
+	 */
+	public static boolean isReadOnly(String method) {
+		return READ_ONLY_METHODS.contains(method);
+	}
+
 	public static int getColPositionFromColumnId(Object columnId, JSONArray projectColumns) {
 		int position = 0;
 		for (int i = 0; i < projectColumns.size(); i++) {
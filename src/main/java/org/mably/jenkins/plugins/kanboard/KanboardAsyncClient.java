@@ -0,0 +1,394 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Asynchronous facade over the blocking {@link Kanboard} API methods. Calls are
+ * run on a controller-wide bounded thread pool and return futures that can be
+ * combined with the composition helpers below.
+ */
+public class KanboardAsyncClient {
+
+	private static final int POOL_SIZE = 16;
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private static final ListeningExecutorService EXECUTOR = MoreExecutors.listeningDecorator(createExecutor());
+
+	private final JSONRPC2Session session;
+	private final PrintStream logger;
+	private final boolean debugMode;
+
+	public KanboardAsyncClient(JSONRPC2Session session, PrintStream logger, boolean debugMode) {
+		this.session = session;
+		this.logger = logger;
+		this.debugMode = debugMode;
+	}
+
+	private static ThreadPoolExecutor createExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new NamingThreadFactory(new DaemonThreadFactory(), "Kanboard async client"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	static ListeningExecutorService getExecutor() {
+		return EXECUTOR;
+	}
+
+	public <T> ListenableFuture<T> submit(Callable<T> callable) {
+		return EXECUTOR.submit(callable);
+	}
+
+	public ListenableFuture<KanboardBatch> send(final KanboardBatch batch) {
+		return submit(new Callable<KanboardBatch>() {
+			@Override
+			public KanboardBatch call() throws Exception {
+				batch.send(session, logger, debugMode);
+				return batch;
+			}
+		});
+	}
+
+	public ListenableFuture<Object> createComment(final Object taskId, final Object userId, final String content) {
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return Kanboard.createComment(session, logger, taskId, userId, content, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<Boolean> createExternalTaskLink(final Object taskId, final String url, final String title,
+			final String type, final Object creatorId) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return Kanboard.createExternalTaskLink(session, logger, taskId, url, title, type, creatorId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<Object> createSubtask(final Object taskId, final Object userId, final String title) {
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return Kanboard.createSubtask(session, logger, taskId, userId, title, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<Object> createTask(final Object projectId, final String taskRefValue,
+			final Object creatorId, final Object ownerId, final String taskTitleValue, final String taskDescValue,
+			final Object columnId, final Object swimlaneId, final String taskColorValue, final String[] taskTags) {
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return Kanboard.createTask(session, logger, projectId, taskRefValue, creatorId, ownerId, taskTitleValue,
+						taskDescValue, columnId, swimlaneId, taskColorValue, taskTags, debugMode);
+			}
+		});
+	}
+
+	/**
+	 * Uploads the given file, streamed from its node through the Base64
+	 * encoder instead of being encoded in memory.
+	 *
+	 * @return a future holding the id of the created file
+	 */
+	public ListenableFuture<Object> createTaskFile(final Object projectId, final Object taskId, final String filename,
+			final FilePath file, final long fileLength, final Object creatorId) {
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return Kanboard.createTaskFile(session, logger, projectId, taskId, filename, file, fileLength,
+						creatorId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<String> downloadTaskFile(final String fileId) {
+		return submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return Kanboard.downloadTaskFile(session, logger, fileId, debugMode);
+			}
+		});
+	}
+
+	/**
+	 * Downloads the given file, its content being decoded into the given file
+	 * as it is received.
+	 *
+	 * @return a future holding the number of bytes written, -1 if Kanboard
+	 *         returned no content
+	 */
+	public ListenableFuture<Long> downloadTaskFile(final String fileId, final FilePath file) {
+		return submit(new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				return Kanboard.downloadTaskFile(session, logger, fileId, file, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONArray> getAllExternalTaskLinks(final Object taskId) {
+		return submit(new Callable<JSONArray>() {
+			@Override
+			public JSONArray call() throws Exception {
+				return Kanboard.getAllExternalTaskLinks(session, logger, taskId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<Object> getAllSubtasks(final Object taskId) {
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return Kanboard.getAllSubtasks(session, logger, taskId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONArray> getAllTaskFiles(final Object taskId) {
+		return submit(new Callable<JSONArray>() {
+			@Override
+			public JSONArray call() throws Exception {
+				return Kanboard.getAllTaskFiles(session, logger, taskId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONObject> getProjectByIdentifier(final Object projectIdentifierValue) {
+		return submit(new Callable<JSONObject>() {
+			@Override
+			public JSONObject call() throws Exception {
+				return Kanboard.getProjectByIdentifier(session, logger, projectIdentifierValue, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONArray> getProjectColumns(final Object projectId) {
+		return submit(new Callable<JSONArray>() {
+			@Override
+			public JSONArray call() throws Exception {
+				return Kanboard.getProjectColumns(session, logger, projectId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONObject> getTask(final Object taskId) {
+		return submit(new Callable<JSONObject>() {
+			@Override
+			public JSONObject call() throws Exception {
+				return Kanboard.getTask(session, logger, taskId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONObject> getTaskByReference(final Object projectId, final String taskRefValue) {
+		return submit(new Callable<JSONObject>() {
+			@Override
+			public JSONObject call() throws Exception {
+				return Kanboard.getTaskByReference(session, logger, projectId, taskRefValue, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONObject> getTaskTags(final Object taskId) {
+		return submit(new Callable<JSONObject>() {
+			@Override
+			public JSONObject call() throws Exception {
+				return Kanboard.getTaskTags(session, logger, taskId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONObject> getUser(final Object userId) {
+		return submit(new Callable<JSONObject>() {
+			@Override
+			public JSONObject call() throws Exception {
+				return Kanboard.getUser(session, logger, userId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONObject> getUserByName(final String username) {
+		return submit(new Callable<JSONObject>() {
+			@Override
+			public JSONObject call() throws Exception {
+				return Kanboard.getUserByName(session, logger, username, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<String> getVersion() {
+		return submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return Kanboard.getVersion(session, logger, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<Boolean> moveTaskPosition(final Object projectId, final Object taskId,
+			final Object newColumnId, final Object newPosition, final Object swimlaneId) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return Kanboard.moveTaskPosition(session, logger, projectId, taskId, newColumnId, newPosition,
+						swimlaneId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<Boolean> removeTaskFile(final Object fileId) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return Kanboard.removeTaskFile(session, logger, fileId, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<JSONArray> searchTasks(final Object projectId, final String query) {
+		return submit(new Callable<JSONArray>() {
+			@Override
+			public JSONArray call() throws Exception {
+				return Kanboard.searchTasks(session, logger, projectId, query, debugMode);
+			}
+		});
+	}
+
+	/**
+	 * @param fields
+	 *            task fields to keep, the others being skipped as the response
+	 *            is read, null to keep them all
+	 */
+	public ListenableFuture<JSONArray> searchTasks(final Object projectId, final String query, final String[] fields) {
+		return submit(new Callable<JSONArray>() {
+			@Override
+			public JSONArray call() throws Exception {
+				return Kanboard.searchTasks(session, logger, projectId, query, fields, debugMode);
+			}
+		});
+	}
+
+	public ListenableFuture<Boolean> updateTask(final Object taskId, final Object ownerId, final String[] taskTags) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return Kanboard.updateTask(session, logger, taskId, ownerId, taskTags, debugMode);
+			}
+		});
+	}
+
+	/**
+	 * @return a future holding the results of all the given futures, failing as
+	 *         soon as one of them fails
+	 */
+	public static <T> ListenableFuture<List<T>> allAsList(Iterable<? extends ListenableFuture<? extends T>> futures) {
+		return Futures.allAsList(futures);
+	}
+
+	/**
+	 * @return a future holding the result of the given function applied to the
+	 *         result of the given future
+	 */
+	public static <I, O> ListenableFuture<O> transform(ListenableFuture<I> future,
+			Function<? super I, ? extends O> function) {
+		return Futures.transform(future, function);
+	}
+
+	/**
+	 * Waits for the given futures to be done, whatever their outcome. The ones
+	 * not done yet are cancelled if the current thread is interrupted, its
+	 * interrupt flag being kept.
+	 *
+	 * @param futures
+	 *            futures to wait for, null ones are ignored
+	 */
+	public static void awaitAll(Future<?>... futures) {
+		for (Future<?> future : futures) {
+			if (future == null) {
+				continue;
+			}
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				// Reported by the caller getting the future result
+			} catch (InterruptedException e) {
+				for (Future<?> other : futures) {
+					if (other != null) {
+						other.cancel(true);
+					}
+				}
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the given future is done and succeeded
+	 */
+	public static boolean isSuccessful(Future<?> future) {
+		if ((future == null) || !future.isDone() || future.isCancelled()) {
+			return false;
+		}
+		try {
+			Uninterruptibles.getUninterruptibly(future);
+			return true;
+		} catch (ExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Waits for the given future and rethrows its failure cause as one of the
+	 * exceptions thrown by the blocking {@link Kanboard} methods.
+	 */
+	public static <T> T get(Future<T> future)
+			throws JSONRPC2SessionException, AbortException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof JSONRPC2SessionException) {
+				throw (JSONRPC2SessionException) cause;
+			} else if (cause instanceof AbortException) {
+				throw (AbortException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new AbortException(String.valueOf(cause));
+			}
+		}
+	}
+
+}
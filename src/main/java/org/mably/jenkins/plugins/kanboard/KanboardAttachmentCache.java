@@ -0,0 +1,185 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Size bounded cache of the downloaded task attachments, kept on each node
+ * under its root directory and shared by all the builds running there. Kanboard
+ * never changes the content of a file id, entries are keyed by the endpoint,
+ * file id, size and date of the file, and the least recently used entries are
+ * evicted once the cache exceeds its maximum size. Entries are copied to the
+ * workspace rather than linked, so that a build modifying a fetched file
+ * doesn't alter the cached one.
+ */
+final class KanboardAttachmentCache {
+
+	/** Default maximum cache size per node, in megabytes. */
+	static final int DEFAULT_MAXSIZE = 512;
+
+	private static final String CACHE_DIR = "caches/kanboard-attachments";
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private static volatile long maxSize = DEFAULT_MAXSIZE * 1024L * 1024L;
+
+	private KanboardAttachmentCache() {
+	}
+
+	/**
+	 * @param megabytes
+	 *            maximum cache size per node, 0 to disable the cache
+	 */
+	static void configure(int megabytes) {
+		maxSize = Math.max(megabytes, 0) * 1024L * 1024L;
+	}
+
+	/**
+	 * @return the cache directory of the node holding the given workspace,
+	 *         null if the cache is disabled or the node is unknown
+	 */
+	static FilePath getDirectory(FilePath workspace) {
+		if (maxSize == 0) {
+			return null;
+		}
+		Computer computer = workspace.toComputer();
+		Node node = (computer == null) ? null : computer.getNode();
+		FilePath root = (node == null) ? null : node.getRootPath();
+		return (root == null) ? null : root.child(CACHE_DIR);
+	}
+
+	/**
+	 * @return the cache key of a Kanboard file
+	 */
+	static String getKey(String endpoint, String fileId, Object size, Object date) {
+		return Util.getDigestOf(endpoint + "\n" + fileId + "\n" + size + "\n" + date);
+	}
+
+	/**
+	 * Copies a cached file to the given target.
+	 *
+	 * @return the file size, -1 if the file is not cached
+	 */
+	static long get(FilePath directory, String key, FilePath target) throws IOException, InterruptedException {
+		return directory.child(key).act(new Get(target.getRemote()));
+	}
+
+	/**
+	 * Adds a downloaded file to the cache, evicting the least recently used
+	 * files if the cache gets too big.
+	 *
+	 * @param source
+	 *            the downloaded file, on the same node as the cache
+	 */
+	static void put(FilePath directory, String key, FilePath source) throws IOException, InterruptedException {
+		directory.act(new Put(key, source.getRemote(), maxSize));
+	}
+
+	private static final class Get extends MasterToSlaveFileCallable<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String target;
+
+		Get(String target) {
+			this.target = target;
+		}
+
+		@Override
+		public Long invoke(File f, VirtualChannel channel) throws IOException {
+			if (!f.isFile()) {
+				return Long.valueOf(-1);
+			}
+			File targetFile = new File(target);
+			targetFile.getParentFile().mkdirs();
+			try {
+				Files.copy(f.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				// Evicted in the meantime
+				targetFile.delete();
+				return Long.valueOf(-1);
+			}
+			// Most recently used
+			f.setLastModified(System.currentTimeMillis());
+			return Long.valueOf(targetFile.length());
+		}
+	}
+
+	private static final class Put extends MasterToSlaveFileCallable<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+		private final String source;
+		private final long maxSize;
+
+		Put(String key, String source, long maxSize) {
+			this.key = key;
+			this.source = source;
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public Void invoke(File dir, VirtualChannel channel) throws IOException {
+			File sourceFile = new File(source);
+			if (sourceFile.length() > maxSize) {
+				return null;
+			}
+			dir.mkdirs();
+			// Builds sharing the node may add the same file at the same time
+			File tmp = new File(dir, key + "." + UUID.randomUUID() + TMP_SUFFIX);
+			Files.copy(sourceFile.toPath(), tmp.toPath());
+			Files.move(tmp.toPath(), new File(dir, key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			evict(dir);
+			return null;
+		}
+
+		private void evict(File dir) {
+			// Files still being added are left alone
+			File[] files = dir.listFiles(new FileFilter() {
+				@Override
+				public boolean accept(File file) {
+					return !file.getName().endsWith(TMP_SUFFIX);
+				}
+			});
+			if (files == null) {
+				return;
+			}
+			long size = 0;
+			for (File file : files) {
+				size += file.length();
+			}
+			if (size <= maxSize) {
+				return;
+			}
+			Arrays.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					return Long.compare(f1.lastModified(), f2.lastModified());
+				}
+			});
+			for (File file : files) {
+				if (size <= maxSize) {
+					break;
+				}
+				long length = file.length();
+				if (file.delete()) {
+					size -= length;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,164 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.FilePath;
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+
+/**
+ * Remembers the digest of the files uploaded to Kanboard tasks, so that an
+ * attachment which didn't change since its last upload isn't removed and sent
+ * again. Digests are kept per endpoint, task and file name, and persisted in
+ * the Jenkins home directory by {@link #save()}, once per publication rather
+ * than once per upload.
+ */
+final class KanboardAttachmentDigests {
+
+	private static final Logger LOGGER = Logger.getLogger(KanboardAttachmentDigests.class.getName());
+
+	private static final String FILE_NAME = "kanboard-attachment-digests.xml";
+	private static final int MAX_ENTRIES = 10000;
+
+	private static KanboardAttachmentDigests instance;
+
+	/**
+	 * Digest of an uploaded file.
+	 */
+	static final class Entry {
+
+		private final String key;
+		private final String fileId;
+		private final long size;
+		private final String digest;
+
+		Entry(String key, String fileId, long size, String digest) {
+			this.key = key;
+			this.fileId = fileId;
+			this.size = size;
+			this.digest = digest;
+		}
+	}
+
+	private final XmlFile xmlFile;
+
+	/** Serializes the writes, so that a snapshot is never overwritten by an older one. */
+	private final Object saveLock = new Object();
+
+	private boolean dirty;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private KanboardAttachmentDigests(XmlFile xmlFile) {
+		this.xmlFile = xmlFile;
+	}
+
+	static synchronized KanboardAttachmentDigests get() {
+		if (instance == null) {
+			Jenkins jenkins = Jenkins.getInstance();
+			XmlFile xmlFile = (jenkins == null) ? null : new XmlFile(new File(jenkins.getRootDir(), FILE_NAME));
+			instance = new KanboardAttachmentDigests(xmlFile);
+			instance.load();
+		}
+		return instance;
+	}
+
+	private static String getKey(URL endpoint, Object taskId, String filename) {
+		return endpoint + "|" + taskId + "|" + filename;
+	}
+
+	/**
+	 * @param remoteFile
+	 *            Kanboard metadata of the file currently attached to the task
+	 * @param length
+	 *            length of the file to upload
+	 * @param digest
+	 *            digest of the file to upload, as returned by
+	 *            {@link FilePath#digest()}
+	 * @return true if the attached file is the one last uploaded and has the
+	 *         same content as the file to upload
+	 */
+	boolean isUnchanged(URL endpoint, Object taskId, String filename, Map<String, Object> remoteFile, long length,
+			String digest) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(getKey(endpoint, taskId, filename));
+		}
+		return (entry != null) && (entry.size == length)
+				&& entry.fileId.equals(String.valueOf(remoteFile.get(Kanboard.ID)))
+				&& String.valueOf(entry.size).equals(String.valueOf(remoteFile.get(Kanboard.SIZE)))
+				&& entry.digest.equals(digest);
+	}
+
+	/**
+	 * Remembers the digest of an uploaded file, persisted by the next
+	 * {@link #save()}.
+	 */
+	void put(URL endpoint, Object taskId, String filename, Object fileId, long length, String digest) {
+		String key = getKey(endpoint, taskId, filename);
+		Entry entry = new Entry(key, String.valueOf(fileId), length, digest);
+		synchronized (this) {
+			entries.put(key, entry);
+			dirty = true;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void load() {
+		if ((xmlFile == null) || !xmlFile.exists()) {
+			return;
+		}
+		try {
+			for (Entry entry : (List<Entry>) xmlFile.read()) {
+				entries.put(entry.key, entry);
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Failed to load " + xmlFile, e);
+		}
+	}
+
+	/**
+	 * Persists the digests remembered since the last save, if any. The file is
+	 * written outside of the lock guarding the digests, so that uploads aren't
+	 * held while it is written.
+	 */
+	void save() {
+		if (xmlFile == null) {
+			return;
+		}
+		synchronized (saveLock) {
+			List<Entry> snapshot;
+			synchronized (this) {
+				if (!dirty) {
+					return;
+				}
+				snapshot = new ArrayList<Entry>(entries.values());
+				dirty = false;
+			}
+			try {
+				xmlFile.write(snapshot);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to save " + xmlFile, e);
+				synchronized (this) {
+					dirty = true;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import hudson.FilePath;
+import hudson.remoting.Pipe;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Resolution and reading of the task attachments, which are looked up in the
+ * build workspace. Files on an agent are compressed on the agent and streamed
+ * to the controller, without ever being held in memory in full.
+ */
+final class KanboardAttachments {
+
+	private static final String GLOB_CHARS = "*?";
+
+	private KanboardAttachments() {
+	}
+
+	/**
+	 * @param workspace
+	 *            the build workspace, relative paths being resolved against
+	 *            it
+	 * @param path
+	 *            an absolute or relative path, or an Ant style pattern
+	 *            relative to the workspace
+	 * @return the matching files, the file denoted by the path if it isn't a
+	 *         pattern, whether it exists or not
+	 */
+	static List<FilePath> resolve(FilePath workspace, String path) throws IOException, InterruptedException {
+		if (!StringUtils.containsAny(path, GLOB_CHARS)) {
+			return Collections.singletonList(workspace.child(path));
+		}
+		return Arrays.asList(workspace.list(path));
+	}
+
+	/**
+	 * Copies the attachments matching the given paths to a directory, so that
+	 * they can be published once the workspace has changed or is gone. Each
+	 * file is copied to its own subdirectory, keeping its name.
+	 *
+	 * @param maxSize
+	 *            maximum attachment size, bigger files being skipped, 0 for no
+	 *            limit
+	 * @return the paths of the copies relative to the directory, the paths
+	 *         matching no file being reported and skipped
+	 */
+	static String[] stage(FilePath workspace, String[] paths, FilePath dir, long maxSize, PrintStream logger)
+			throws IOException, InterruptedException {
+		List<String> staged = new ArrayList<String>();
+		for (String path : paths) {
+			List<FilePath> files = resolve(workspace, path);
+			if (files.isEmpty()) {
+				logger.println(Messages.attachment_pattern_no_match(path));
+				continue;
+			}
+			for (FilePath file : files) {
+				if (!file.exists()) {
+					logger.println(Messages.attachment_file_not_found(file.getRemote()));
+					continue;
+				}
+				long length = file.length();
+				if ((maxSize != 0) && (length > maxSize)) {
+					logger.println(Messages.attachment_file_too_big(file.getRemote(), length, maxSize));
+					continue;
+				}
+				String stagedPath = staged.size() + "/" + file.getName();
+				file.copyTo(dir.child(stagedPath));
+				staged.add(stagedPath);
+			}
+		}
+		return staged.toArray(new String[staged.size()]);
+	}
+
+	/**
+	 * @return a stream of the file content, compressed while being transferred
+	 *         if the file is remote
+	 */
+	static InputStream read(FilePath file) throws IOException, InterruptedException {
+		if (!file.isRemote()) {
+			return file.read();
+		}
+		Pipe pipe = Pipe.createRemoteToLocal();
+		file.actAsync(new CompressedReader(pipe));
+		return new GZIPInputStream(pipe.getIn());
+	}
+
+	/**
+	 * Writes the compressed content of a file to a pipe.
+	 */
+	private static final class CompressedReader extends MasterToSlaveFileCallable<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Pipe pipe;
+
+		CompressedReader(Pipe pipe) {
+			this.pipe = pipe;
+		}
+
+		@Override
+		public Void invoke(File f, VirtualChannel channel) throws IOException {
+			OutputStream out = new GZIPOutputStream(pipe.getOut());
+			try {
+				InputStream in = new FileInputStream(f);
+				try {
+					IOUtils.copyLarge(in, out);
+				} finally {
+					in.close();
+				}
+			} finally {
+				out.close();
+			}
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Controller-wide pool publishing tasks in the background, so that the build
+ * step doesn't wait for Kanboard. The outcome of each publication is recorded
+ * in a {@link KanboardPublisherAction} attached to the build.
+ */
+final class KanboardBackgroundPublisher {
+
+	private static final int POOL_SIZE = 4;
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private static final Logger LOGGER = Logger.getLogger(KanboardBackgroundPublisher.class.getName());
+
+	private static final ExecutorService EXECUTOR = createExecutor();
+
+	private KanboardBackgroundPublisher() {
+	}
+
+	private static ExecutorService createExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new NamingThreadFactory(new DaemonThreadFactory(), "Kanboard background publisher"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static void deleteAttachments(File attachmentsDir) {
+		if (attachmentsDir == null) {
+			return;
+		}
+		try {
+			Util.deleteRecursive(attachmentsDir);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to delete " + attachmentsDir, e);
+		}
+	}
+
+	/**
+	 * @param attachmentsDir
+	 *            controller directory holding the copies of the attachments,
+	 *            deleted once the publication is done, may be null if there
+	 *            are none
+	 */
+	static Future<?> submit(final KanboardTaskPublisher publisher, final KanboardTaskPublisher.TaskValues values,
+			final File attachmentsDir, final KanboardPublisherAction action) {
+		return EXECUTOR.submit(new Runnable() {
+			@Override
+			public void run() {
+				PrintStream logger = action.start();
+				try {
+					KanboardTaskPublisher.PublishedTask task = publisher.publishOrDefer(values,
+							(attachmentsDir == null) ? null : new FilePath(attachmentsDir), logger, action);
+					if (task == null) {
+						action.finish(KanboardPublisherAction.Status.DEFERRED, null);
+					} else {
+						action.finish(KanboardPublisherAction.Status.SUCCESS, task.getURL());
+					}
+				} catch (Exception e) {
+					logger.println(e.getMessage());
+					action.finish(KanboardPublisherAction.Status.FAILURE, null);
+				} finally {
+					// A deferred publication has its own copies
+					deleteAttachments(attachmentsDir);
+				}
+			}
+		});
+	}
+
+}
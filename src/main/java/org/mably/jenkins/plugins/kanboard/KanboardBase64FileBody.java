@@ -0,0 +1,90 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import hudson.FilePath;
+
+/**
+ * JSON-RPC request body holding the content of a file as a Base64 encoded
+ * parameter. The file is read, from the agent holding it if any, and encoded
+ * while the request is written to the connection, so that uploading a file
+ * takes a constant amount of memory.
+ */
+final class KanboardBase64FileBody extends KanboardTransport.RequestBody {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final byte[] prefix;
+	private final byte[] suffix;
+	private final FilePath file;
+	private final long fileLength;
+
+	/**
+	 * @param request
+	 *            the request, without the file content parameter
+	 * @param param
+	 *            name of the file content parameter
+	 * @param fileLength
+	 *            length of the file, which is checked while it is sent
+	 */
+	KanboardBase64FileBody(JSONRPC2Request request, String param, FilePath file, long fileLength) {
+		String placeholder = "blob-" + UUID.randomUUID();
+		Map<String, Object> params = new HashMap<String, Object>(request.getNamedParams());
+		params.put(param, placeholder);
+		String json = new JSONRPC2Request(request.getMethod(), params, request.getID()).toJSONString();
+		int index = json.indexOf(placeholder);
+		this.prefix = json.substring(0, index).getBytes(UTF8);
+		this.suffix = json.substring(index + placeholder.length()).getBytes(UTF8);
+		this.file = file;
+		this.fileLength = fileLength;
+	}
+
+	/**
+	 * @return length of the Base64 encoded file content
+	 */
+	static long getEncodedLength(long length) {
+		return 4 * ((length + 2) / 3);
+	}
+
+	@Override
+	public long getContentLength() {
+		return prefix.length + getEncodedLength(fileLength) + suffix.length;
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(prefix);
+		InputStream in;
+		try {
+			in = KanboardAttachments.read(file);
+		} catch (InterruptedException e) {
+			throw (IOException) new InterruptedIOException(e.getMessage()).initCause(e);
+		}
+		try {
+			// No line breaks, the encoder is closed to write the padding only
+			OutputStream encoder = new Base64OutputStream(new CloseShieldOutputStream(out), true, 0, new byte[0]);
+			long copied = IOUtils.copyLarge(in, encoder, 0, fileLength);
+			encoder.close();
+			if (copied != fileLength) {
+				throw new IOException("File " + file + " changed while being sent");
+			}
+		} finally {
+			in.close();
+		}
+		out.write(suffix);
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import hudson.FilePath;
+
+/**
+ * JSON-RPC result handler writing a Base64 encoded string result to a file.
+ * The result is decoded as the response is received and written to the file,
+ * on the agent holding it if any, so that downloading a file takes a constant
+ * amount of memory. Any other result is returned as is.
+ */
+final class KanboardBase64FileHandler implements KanboardJsonReader.ResultHandler {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FilePath file;
+
+	KanboardBase64FileHandler(FilePath file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the number of bytes written to the file as a {@link Long}, or
+	 *         the result if it is not a string
+	 */
+	@Override
+	public Object read(KanboardJsonReader reader) throws IOException {
+
+		if (reader.peek() != '"') {
+			return reader.readValue();
+		}
+
+		OutputStream out;
+		try {
+			// Truncates the file written by a previous attempt, if any
+			out = file.write();
+		} catch (InterruptedException e) {
+			throw (IOException) new InterruptedIOException(e.getMessage()).initCause(e);
+		}
+
+		CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		final OutputStream decoder = new Base64OutputStream(counter, false);
+		try {
+			reader.nextString(new Writer() {
+
+				private final byte[] bytes = new byte[BUFFER_SIZE];
+
+				@Override
+				public void write(char[] cbuf, int off, int len) throws IOException {
+					// Base64 only holds ASCII characters
+					while (len > 0) {
+						int n = Math.min(len, bytes.length);
+						for (int i = 0; i < n; i++) {
+							bytes[i] = (byte) cbuf[off + i];
+						}
+						decoder.write(bytes, 0, n);
+						off += n;
+						len -= n;
+					}
+				}
+
+				@Override
+				public void flush() throws IOException {
+					decoder.flush();
+				}
+
+				@Override
+				public void close() throws IOException {
+					decoder.close();
+				}
+			});
+			decoder.close();
+		} catch (IOException e) {
+			IOUtils.closeQuietly(decoder);
+			try {
+				file.delete();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			throw e;
+		}
+		return Long.valueOf(counter.getByteCount());
+	}
+
+}
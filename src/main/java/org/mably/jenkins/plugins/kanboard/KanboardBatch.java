@@ -0,0 +1,121 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+
+/**
+ * Groups independent Kanboard API calls into a single JSON-RPC 2.0 batch
+ * request. Each call gets a unique request id which is used to match it with
+ * its response.
+ */
+public class KanboardBatch {
+
+	private static final AtomicLong REQUEST_ID = new AtomicLong();
+
+	private final List<Call<?>> calls = new ArrayList<Call<?>>();
+
+	private PrintStream logger;
+
+	/**
+	 * A call added to a batch, its result is available once the batch has been
+	 * sent.
+	 */
+	public static final class Call<T> {
+
+		private final KanboardBatch batch;
+		private final JSONRPC2Request request;
+		private final Class<T> resultClass;
+		private JSONRPC2Response response;
+
+		private Call(KanboardBatch batch, JSONRPC2Request request, Class<T> resultClass) {
+			this.batch = batch;
+			this.request = request;
+			this.resultClass = resultClass;
+		}
+
+		public JSONRPC2Request getRequest() {
+			return request;
+		}
+
+		/**
+		 * @return the call result, cast to the expected type
+		 * @throws AbortException
+		 *             if the batch has not been sent or if Kanboard returned
+		 *             an error for this call
+		 */
+		public T get() throws AbortException {
+			if (response == null) {
+				throw new AbortException("No response received for batched " + request.getMethod() + " request.");
+			}
+			if (response.indicatesSuccess()) {
+				return resultClass.cast(response.getResult());
+			} else {
+				if (batch.logger != null) {
+					batch.logger.println(response.getError().getMessage());
+				}
+				throw new AbortException(response.getError().getMessage());
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return calls.isEmpty();
+	}
+
+	public int size() {
+		return calls.size();
+	}
+
+	<T> Call<T> add(String method, Map<String, Object> params, Class<T> resultClass) {
+		JSONRPC2Request request = new JSONRPC2Request(method, params, REQUEST_ID.incrementAndGet());
+		Call<T> call = new Call<T>(this, request, resultClass);
+		calls.add(call);
+		return call;
+	}
+
+	/**
+	 * Sends all the calls added to this batch in a single HTTP request, through
+	 * the {@link KanboardInterceptor} chain. A batch holding only one call is
+	 * sent as a regular JSON-RPC request.
+	 *
+	 * @param session
+	 *            a session created by {@link Utils#initJSONRPCSession}
+	 */
+	public void send(JSONRPC2Session session, PrintStream logger, boolean debugMode)
+			throws JSONRPC2SessionException {
+
+		this.logger = logger;
+
+		if (calls.isEmpty()) {
+			return;
+		}
+
+		if (calls.size() == 1) {
+			Call<?> call = calls.get(0);
+			call.response = new KanboardCall(session, logger, call.request, debugMode).proceed();
+			return;
+		}
+
+		List<JSONRPC2Request> requests = new ArrayList<JSONRPC2Request>(calls.size());
+		for (Call<?> call : calls) {
+			requests.add(call.request);
+		}
+		@SuppressWarnings("unchecked")
+		List<JSONRPC2Response> responses = (List<JSONRPC2Response>) new KanboardCall(session, logger, requests,
+				debugMode).proceed().getResult();
+		for (int i = 0; i < calls.size(); i++) {
+			calls.get(i).response = responses.get(i);
+		}
+	}
+
+}
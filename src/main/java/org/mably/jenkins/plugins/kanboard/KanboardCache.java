@@ -0,0 +1,127 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size bounded, least recently used cache whose entries expire after a
+ * configurable time to live. A time to live of 0 disables the cache.
+ */
+public class KanboardCache<K, V> {
+
+	private final Map<K, Entry<V>> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private volatile long ttlMillis;
+
+	private static final class Entry<V> {
+
+		final V value;
+		final long expiration;
+
+		Entry(V value, long expiration) {
+			this.value = value;
+			this.expiration = expiration;
+		}
+	}
+
+	public KanboardCache(final int maxSize, long ttl, TimeUnit unit) {
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				return size() > maxSize;
+			}
+		};
+		setTtl(ttl, unit);
+	}
+
+	public void setTtl(long ttl, TimeUnit unit) {
+		this.ttlMillis = unit.toMillis(Math.max(ttl, 0));
+		if (this.ttlMillis == 0) {
+			clear();
+		}
+	}
+
+	public boolean isEnabled() {
+		return ttlMillis > 0;
+	}
+
+	/**
+	 * @return the cached value or null if missing or expired
+	 */
+	public V get(K key) {
+		Entry<V> entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if ((entry != null) && (entry.expiration <= System.currentTimeMillis())) {
+				entries.remove(key);
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		} else {
+			hits.incrementAndGet();
+			return entry.value;
+		}
+	}
+
+	public boolean containsKey(K key) {
+		synchronized (entries) {
+			Entry<V> entry = entries.get(key);
+			return (entry != null) && (entry.expiration > System.currentTimeMillis());
+		}
+	}
+
+	public void put(K key, V value) {
+		put(key, value, ttlMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Caches a value with its own time to live, which can't be longer than the
+	 * cache one.
+	 */
+	public void put(K key, V value, long ttl, TimeUnit unit) {
+		long entryTtlMillis = Math.min(unit.toMillis(ttl), ttlMillis);
+		if (entryTtlMillis > 0) {
+			synchronized (entries) {
+				entries.put(key, new Entry<V>(value, System.currentTimeMillis() + entryTtlMillis));
+			}
+		}
+	}
+
+	public void invalidate(K key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+}
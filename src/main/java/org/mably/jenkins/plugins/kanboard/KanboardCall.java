@@ -0,0 +1,377 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+/**
+ * A single Kanboard API call going through the {@link KanboardInterceptor}
+ * chain. The last link of the chain sends the request and records the size of
+ * the exchanged messages. When a result handler is given, the response is
+ * parsed as it is received and its result is the one returned by the handler.
+ * When a request body is given, it is written to the connection instead of
+ * the serialized request.
+ * <p>
+ * A call can also hold several requests sent as a single JSON-RPC batch
+ * request, the chain then returning a response whose result is the list of the
+ * batched request responses, also available from {@link #getResponses()}.
+ * <p>
+ * Retries, the circuit breaker and the rate limiter are applied by the
+ * {@link KanboardSession} below the chain rather than by interceptors. They
+ * act on each HTTP attempt, the request body being written again and the
+ * response read again from scratch on each retry, so the whole chain, and the
+ * metrics it records, sees a single call whatever the number of attempts.
+ */
+public final class KanboardCall {
+
+	private static final KanboardJsonReader.ResultHandler VALUE_HANDLER = new KanboardJsonReader.ResultHandler() {
+		@Override
+		public Object read(KanboardJsonReader reader) throws IOException {
+			return reader.readValue();
+		}
+	};
+
+	private final JSONRPC2Session session;
+	private final PrintStream logger;
+	private final JSONRPC2Request request;
+	private final List<JSONRPC2Request> requests;
+	private final boolean debugMode;
+
+	private KanboardJsonReader.ResultHandler resultHandler;
+	private KanboardTransport.RequestBody requestBody;
+
+	private long requestSize;
+	private long responseSize;
+
+	private long[] requestSizes;
+	private long[] responseSizes;
+	private List<JSONRPC2Response> responses;
+
+	KanboardCall(JSONRPC2Session session, PrintStream logger, JSONRPC2Request request, boolean debugMode) {
+		this.session = session;
+		this.logger = logger;
+		this.request = request;
+		this.requests = Collections.singletonList(request);
+		this.debugMode = debugMode;
+	}
+
+	/**
+	 * Creates a call sending the given requests as a single batch request,
+	 * each request having its own id.
+	 */
+	KanboardCall(JSONRPC2Session session, PrintStream logger, List<JSONRPC2Request> requests, boolean debugMode) {
+		this.session = session;
+		this.logger = logger;
+		this.request = null;
+		this.requests = Collections.unmodifiableList(new ArrayList<JSONRPC2Request>(requests));
+		this.debugMode = debugMode;
+		this.requestSizes = new long[requests.size()];
+		this.responseSizes = new long[requests.size()];
+	}
+
+	/**
+	 * @param resultHandler
+	 *            handler reading the result as the response is received
+	 */
+	KanboardCall withResultHandler(KanboardJsonReader.ResultHandler resultHandler) {
+		this.resultHandler = resultHandler;
+		return this;
+	}
+
+	/**
+	 * @param requestBody
+	 *            body sent instead of the serialized request, which is then
+	 *            only used for logging
+	 */
+	KanboardCall withRequestBody(KanboardTransport.RequestBody requestBody) {
+		this.requestBody = requestBody;
+		return this;
+	}
+
+	public JSONRPC2Session getSession() {
+		return session;
+	}
+
+	/**
+	 * @return the build logger, may be null
+	 */
+	public PrintStream getLogger() {
+		return logger;
+	}
+
+	/**
+	 * @return the request, null for a batch call
+	 */
+	public JSONRPC2Request getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return the called method, null for a batch call
+	 */
+	public String getMethod() {
+		return (request == null) ? null : request.getMethod();
+	}
+
+	public boolean isBatch() {
+		return request == null;
+	}
+
+	/**
+	 * @return the batched requests, or the single request of a regular call
+	 */
+	public List<JSONRPC2Request> getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return the responses of the batched requests in the request order, a
+	 *         request left without response getting a null one, null until a
+	 *         batch response has been received and for a regular call
+	 */
+	public List<JSONRPC2Response> getResponses() {
+		return responses;
+	}
+
+	public boolean isDebugMode() {
+		return debugMode;
+	}
+
+	/**
+	 * @return size in characters of the last request sent, which is also its
+	 *         size in bytes as long as it only holds ASCII characters
+	 */
+	public long getRequestSize() {
+		return requestSize;
+	}
+
+	/**
+	 * @return size in characters of the last response received
+	 */
+	public long getResponseSize() {
+		return responseSize;
+	}
+
+	/**
+	 * @return size in characters of the given request within the last batch
+	 *         request sent, or of the request of a regular call
+	 */
+	public long getRequestSize(int index) {
+		return isBatch() ? requestSizes[index] : requestSize;
+	}
+
+	/**
+	 * @return size in characters of the response to the given request within
+	 *         the last batch response received, or of the response of a
+	 *         regular call
+	 */
+	public long getResponseSize(int index) {
+		return isBatch() ? responseSizes[index] : responseSize;
+	}
+
+	/**
+	 * Sends the call through all the registered interceptors.
+	 */
+	JSONRPC2Response proceed() throws JSONRPC2SessionException {
+		return new ChainImpl(KanboardInterceptor.all(), 0).proceed();
+	}
+
+	private JSONRPC2Response execute() throws JSONRPC2SessionException {
+
+		if (isBatch()) {
+			return executeBatch();
+		}
+
+		boolean debugEnabled = debugMode && (logger != null);
+
+		String jsonRequest = null;
+		if (requestBody == null) {
+			jsonRequest = request.toJSONString();
+			requestSize = jsonRequest.length();
+		} else {
+			requestSize = requestBody.getContentLength();
+		}
+		if (debugEnabled) {
+			KanboardDebugLogger.logRequest(logger, request, jsonRequest);
+		}
+
+		KanboardSession kanboardSession = getKanboardSession();
+		boolean readOnly = Kanboard.isReadOnly(getMethod());
+		KanboardTransport.RequestBody body = (requestBody == null) ? KanboardTransport.RequestBody.of(jsonRequest)
+				: requestBody;
+		JSONRPC2Response response;
+		String jsonResponse = null;
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			if (resultHandler == null) {
+				jsonResponse = kanboardSession.post(body, readOnly, KanboardTransport.STRING_RESPONSE);
+				responseSize = jsonResponse.length();
+				response = KanboardSession.parseResponse(jsonResponse);
+			} else {
+				response = kanboardSession.post(body, readOnly,
+						new KanboardTransport.ResponseHandler<JSONRPC2Response>() {
+							@Override
+							public JSONRPC2Response handle(Reader reader) throws IOException {
+								KanboardJsonReader jsonReader = new KanboardJsonReader(reader);
+								JSONRPC2Response response = jsonReader.readResponse(resultHandler);
+								responseSize = jsonReader.getCount();
+								return response;
+							}
+						});
+			}
+			success = response.indicatesSuccess();
+		} finally {
+			kanboardSession.recordOperation(getMethod(), start, success);
+		}
+
+		if (debugEnabled) {
+			KanboardDebugLogger.logResponse(logger, getMethod(), response, jsonResponse, responseSize);
+		}
+
+		return response;
+	}
+
+	/**
+	 * Sends all the requests in a single batch request, the responses being
+	 * matched with their request by id as they are read. Each batched request
+	 * is recorded as an operation of its own.
+	 */
+	private JSONRPC2Response executeBatch() throws JSONRPC2SessionException {
+
+		boolean debugEnabled = debugMode && (logger != null);
+		KanboardSession kanboardSession = getKanboardSession();
+
+		final Map<String, Integer> indexes = new HashMap<String, Integer>();
+		StringBuilder jsonRequests = new StringBuilder("[");
+		boolean readOnly = true;
+		for (int i = 0; i < requests.size(); i++) {
+			JSONRPC2Request batchedRequest = requests.get(i);
+			String jsonRequest = batchedRequest.toJSONString();
+			requestSizes[i] = jsonRequest.length();
+			jsonRequests.append((i == 0) ? "" : ",").append(jsonRequest);
+			indexes.put(String.valueOf(batchedRequest.getID()), i);
+			readOnly &= Kanboard.isReadOnly(batchedRequest.getMethod());
+			if (debugEnabled) {
+				KanboardDebugLogger.logRequest(logger, batchedRequest, jsonRequest);
+			}
+		}
+		String jsonRequest = jsonRequests.append(']').toString();
+		requestSize = jsonRequest.length();
+
+		long start = System.nanoTime();
+		JSONRPC2Response batchError = null;
+		try {
+			batchError = kanboardSession.post(KanboardTransport.RequestBody.of(jsonRequest), readOnly,
+					new KanboardTransport.ResponseHandler<JSONRPC2Response>() {
+						@Override
+						public JSONRPC2Response handle(Reader reader) throws IOException {
+							return readBatchResponse(new KanboardJsonReader(reader), indexes);
+						}
+					});
+		} finally {
+			for (int i = 0; i < requests.size(); i++) {
+				JSONRPC2Response response = (responses == null) ? null : responses.get(i);
+				kanboardSession.recordOperation(requests.get(i).getMethod(), start,
+						(response != null) && response.indicatesSuccess());
+			}
+		}
+
+		if (batchError != null) {
+			// The whole batch was rejected
+			throw new JSONRPC2SessionException("Invalid JSON-RPC 2.0 batch response: "
+					+ (batchError.indicatesSuccess() ? batchError.toJSONString() : batchError.getError().getMessage()),
+					JSONRPC2SessionException.BAD_RESPONSE);
+		}
+
+		if (debugEnabled) {
+			for (int i = 0; i < requests.size(); i++) {
+				if (responses.get(i) != null) {
+					KanboardDebugLogger.logResponse(logger, requests.get(i).getMethod(), responses.get(i), null,
+							responseSizes[i]);
+				}
+			}
+		}
+
+		return new JSONRPC2Response(responses, null);
+	}
+
+	/**
+	 * Reads a batch response, which is read again from scratch when the batch
+	 * is sent again.
+	 *
+	 * @return null once the responses have been read, the response rejecting
+	 *         the whole batch if the server didn't return an array
+	 */
+	private JSONRPC2Response readBatchResponse(KanboardJsonReader reader, Map<String, Integer> indexes)
+			throws IOException {
+		responses = null;
+		Arrays.fill(responseSizes, 0);
+		if (reader.peek() != '[') {
+			JSONRPC2Response response = reader.readResponse(VALUE_HANDLER);
+			responseSize = reader.getCount();
+			return response;
+		}
+		List<JSONRPC2Response> received = new ArrayList<JSONRPC2Response>(
+				Collections.<JSONRPC2Response> nCopies(requests.size(), null));
+		reader.beginArray();
+		while (reader.hasNext()) {
+			long offset = reader.getOffset();
+			JSONRPC2Response response = reader.readResponse(VALUE_HANDLER);
+			Integer index = indexes.get(String.valueOf(response.getID()));
+			if (index != null) {
+				received.set(index, response);
+				responseSizes[index] = reader.getOffset() - offset;
+			}
+		}
+		reader.endArray();
+		responseSize = reader.getCount();
+		responses = Collections.unmodifiableList(received);
+		return null;
+	}
+
+	/**
+	 * @return the call session, which must be a {@link KanboardSession} as
+	 *         neither request bodies, streamed responses nor batch requests
+	 *         can be sent through a regular JSON-RPC session
+	 */
+	private KanboardSession getKanboardSession() throws JSONRPC2SessionException {
+		if (!(session instanceof KanboardSession)) {
+			throw new JSONRPC2SessionException("Unsupported JSON-RPC 2.0 session: " + session.getClass().getName(),
+					JSONRPC2SessionException.UNSPECIFIED_CAUSE);
+		}
+		return (KanboardSession) session;
+	}
+
+	private final class ChainImpl implements KanboardInterceptor.Chain {
+
+		private final List<KanboardInterceptor> interceptors;
+		private final int index;
+
+		ChainImpl(List<KanboardInterceptor> interceptors, int index) {
+			this.interceptors = interceptors;
+			this.index = index;
+		}
+
+		@Override
+		public JSONRPC2Response proceed() throws JSONRPC2SessionException {
+			if (index < interceptors.size()) {
+				return interceptors.get(index).intercept(KanboardCall.this, new ChainImpl(interceptors, index + 1));
+			}
+			return execute();
+		}
+
+	}
+
+}
@@ -0,0 +1,141 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per endpoint circuit breaker. After a number of consecutive failures the
+ * circuit opens and requests fail fast until the open duration has elapsed,
+ * then a single trial request is let through to check whether the endpoint is
+ * back.
+ */
+public final class KanboardCircuitBreaker {
+
+	static final int DEFAULT_FAILURETHRESHOLD = 5;
+	static final int DEFAULT_OPENDURATION = 30;
+
+	private static final ConcurrentMap<String, KanboardCircuitBreaker> BREAKERS = //
+			new ConcurrentHashMap<String, KanboardCircuitBreaker>();
+
+	private static volatile int failureThreshold = DEFAULT_FAILURETHRESHOLD;
+	private static volatile long openDurationMillis = DEFAULT_OPENDURATION * 1000L;
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String endpoint;
+
+	private State state = State.CLOSED;
+	private int failures;
+	private long openedAt;
+	private boolean trialPending;
+
+	private KanboardCircuitBreaker(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * @param threshold
+	 *            consecutive failures after which the circuit opens, 0 to
+	 *            disable circuit breaking
+	 * @param openDuration
+	 *            delay in seconds before a trial request is let through
+	 */
+	static void configure(int threshold, int openDuration) {
+		failureThreshold = Math.max(threshold, 0);
+		openDurationMillis = Math.max(openDuration, 0) * 1000L;
+	}
+
+	public static KanboardCircuitBreaker get(URL url) {
+		String endpoint = String.valueOf(url);
+		KanboardCircuitBreaker breaker = BREAKERS.get(endpoint);
+		if (breaker == null) {
+			KanboardCircuitBreaker newBreaker = new KanboardCircuitBreaker(endpoint);
+			breaker = BREAKERS.putIfAbsent(endpoint, newBreaker);
+			if (breaker == null) {
+				breaker = newBreaker;
+			}
+		}
+		return breaker;
+	}
+
+	public static List<KanboardCircuitBreaker> all() {
+		List<KanboardCircuitBreaker> breakers = new ArrayList<KanboardCircuitBreaker>(BREAKERS.values());
+		return Collections.unmodifiableList(breakers);
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public synchronized State getState() {
+		if ((state == State.OPEN) && isOpenDurationElapsed()) {
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	public synchronized int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return the date until which requests fail fast, or null if the circuit
+	 *         isn't open
+	 */
+	public synchronized Date getRetryDate() {
+		return (state == State.CLOSED) ? null : new Date(openedAt + openDurationMillis);
+	}
+
+	private boolean isOpenDurationElapsed() {
+		return System.currentTimeMillis() - openedAt >= openDurationMillis;
+	}
+
+	/**
+	 * @return true if a request can be sent to the endpoint
+	 */
+	public synchronized boolean allowRequest() {
+		if (failureThreshold == 0) {
+			return true;
+		}
+		switch (state) {
+		case OPEN:
+			if (isOpenDurationElapsed()) {
+				state = State.HALF_OPEN;
+				trialPending = true;
+				return true;
+			}
+			return false;
+		case HALF_OPEN:
+			if (trialPending) {
+				return false;
+			}
+			trialPending = true;
+			return true;
+		default:
+			return true;
+		}
+	}
+
+	public synchronized void recordSuccess() {
+		state = State.CLOSED;
+		failures = 0;
+		trialPending = false;
+	}
+
+	public synchronized void recordFailure() {
+		failures++;
+		trialPending = false;
+		if ((failureThreshold > 0) && ((state == State.HALF_OPEN) || (failures >= failureThreshold))) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jenkinsci.plugins.plaincredentials.StringCredentials;
+
+import com.cloudbees.plugins.credentials.CredentialsMatcher;
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+
+/**
+ * Caches resolved API token secrets by credential id, and the corresponding
+ * precomputed API authenticators by token hash, so that creating a session
+ * neither scans the credentials nor encodes the token again. Tokens are held
+ * as {@link Secret}s and are never used as plain text keys.
+ * <p>
+ * Credentials are looked up in the Jenkins root context, which only sees the
+ * global credentials stores. The cache is cleared whenever the system
+ * credentials store is saved. The credentials plugin doesn't notify changes
+ * made to other global stores, such as the ones contributed by other plugins,
+ * so a token changed there is only picked up once its entry expires, up to
+ * {@value #TTL} minutes later.
+ */
+public final class KanboardCredentialsCache {
+
+	private static final Logger LOGGER = Logger.getLogger(KanboardCredentialsCache.class.getName());
+
+	private static final int MAX_ENTRIES = 100;
+	private static final long TTL = 10;
+	private static final long NEGATIVE_TTL = 1;
+
+	private static final Object NOT_FOUND = new Object();
+
+	/** Secret token or {@link #NOT_FOUND}, by credential id. */
+	private static final KanboardCache<String, Object> TOKENS = new KanboardCache<String, Object>(MAX_ENTRIES, TTL,
+			TimeUnit.MINUTES);
+
+	/** Authenticators by SHA-256 hash of their token. */
+	private static final KanboardCache<String, Utils.ApiAuthenticator> AUTHENTICATORS = //
+			new KanboardCache<String, Utils.ApiAuthenticator>(MAX_ENTRIES, TTL, TimeUnit.MINUTES);
+
+	private KanboardCredentialsCache() {
+	}
+
+	/**
+	 * @return the authenticator for the given credential, or for the given raw
+	 *         API token if the credential is undefined or can't be found
+	 */
+	public static Utils.ApiAuthenticator getAuthenticator(String apiTokenCredentialId, String apiToken) {
+		String token = getToken(apiTokenCredentialId, apiToken);
+		String key = DigestUtils.sha256Hex(String.valueOf(token));
+		Utils.ApiAuthenticator authenticator = AUTHENTICATORS.get(key);
+		if (authenticator == null) {
+			authenticator = new Utils.ApiAuthenticator(token);
+			AUTHENTICATORS.put(key, authenticator);
+		}
+		return authenticator;
+	}
+
+	static String getToken(String apiTokenCredentialId, String apiToken) {
+		String token = apiToken;
+		if (apiTokenCredentialId != null && !apiTokenCredentialId.isEmpty()) {
+			Object credentialToken = TOKENS.get(apiTokenCredentialId);
+			if (credentialToken == null) {
+				StringCredentials credentials = lookupCredentials(apiTokenCredentialId);
+				if (credentials == null) {
+					credentialToken = NOT_FOUND;
+					TOKENS.put(apiTokenCredentialId, NOT_FOUND, NEGATIVE_TTL, TimeUnit.MINUTES);
+				} else {
+					credentialToken = credentials.getSecret();
+					TOKENS.put(apiTokenCredentialId, credentialToken);
+				}
+			}
+			if (credentialToken != NOT_FOUND) {
+				LOGGER.fine("Using Integration Token Credential ID.");
+				token = ((Secret) credentialToken).getPlainText();
+			}
+		}
+		return token;
+	}
+
+	private static StringCredentials lookupCredentials(String credentialId) {
+		List<StringCredentials> credentials = CredentialsProvider.lookupCredentials(StringCredentials.class,
+				Jenkins.getInstance(), ACL.SYSTEM, Collections.<DomainRequirement> emptyList());
+		CredentialsMatcher matcher = CredentialsMatchers.withId(credentialId);
+		return CredentialsMatchers.firstOrNull(credentials, matcher);
+	}
+
+	public static void invalidate() {
+		TOKENS.clear();
+		AUTHENTICATORS.clear();
+	}
+
+	/**
+	 * Clears the cache when the system credentials store is saved.
+	 */
+	@Extension
+	public static final class CredentialsChangeListener extends SaveableListener {
+
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (o instanceof SystemCredentialsProvider) {
+				invalidate();
+			}
+		}
+	}
+
+}
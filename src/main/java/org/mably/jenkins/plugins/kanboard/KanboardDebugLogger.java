@@ -0,0 +1,227 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import hudson.Util;
+import net.minidev.json.JSONValue;
+
+/**
+ * Debug mode logger of the Kanboard API requests and responses. Depending on
+ * the verbosity of the method, messages are logged in full, summarized, or
+ * written with file contents replaced by their length and digest and long
+ * values truncated. Redacted messages are written from the parsed request and
+ * response, the whole message is never serialized again.
+ */
+public final class KanboardDebugLogger {
+
+	public enum Verbosity {
+		/** Nothing is logged. */
+		NONE,
+		/** Only the method and the message sizes are logged. */
+		SUMMARY,
+		/** File contents are replaced by their digest, long values truncated. */
+		REDACTED,
+		/** Messages are logged as they are sent and received. */
+		FULL
+	}
+
+	static final Verbosity DEFAULT_VERBOSITY = Verbosity.REDACTED;
+
+	/** Maximum length of a redacted message. */
+	static final int MAX_MESSAGE_LENGTH = 4000;
+
+	/** Strings longer than this are truncated in redacted messages. */
+	static final int MAX_STRING_LENGTH = 200;
+
+	private static final String BLOB = "blob";
+	private static final String DOWNLOAD_TASK_FILE = "downloadTaskFile";
+
+	private static volatile Verbosity defaultVerbosity = DEFAULT_VERBOSITY;
+	private static volatile Map<String, Verbosity> methodVerbosities = Collections.emptyMap();
+
+	private KanboardDebugLogger() {
+	}
+
+	/**
+	 * @param verbosity
+	 *            verbosity of the methods not listed in the overrides
+	 * @param overrides
+	 *            one {@code method=VERBOSITY} line per method, invalid lines
+	 *            are ignored
+	 */
+	static void configure(Verbosity verbosity, String overrides) {
+		defaultVerbosity = (verbosity == null) ? DEFAULT_VERBOSITY : verbosity;
+		methodVerbosities = Collections.unmodifiableMap(parseOverrides(overrides, new ArrayList<String>()));
+	}
+
+	/**
+	 * @param invalidLines
+	 *            filled with the lines which couldn't be parsed
+	 * @return verbosities by method
+	 */
+	static Map<String, Verbosity> parseOverrides(String overrides, List<String> invalidLines) {
+		Map<String, Verbosity> verbosities = new HashMap<String, Verbosity>();
+		for (String line : StringUtils.split(Util.fixNull(overrides), "\r\n,")) {
+			String[] parts = StringUtils.split(line, "=", 2);
+			Verbosity methodVerbosity = (parts.length == 2) ? parseVerbosity(parts[1]) : null;
+			if (methodVerbosity == null) {
+				invalidLines.add(line.trim());
+			} else {
+				verbosities.put(parts[0].trim(), methodVerbosity);
+			}
+		}
+		return verbosities;
+	}
+
+	/**
+	 * @return the verbosity matching the given name, or null if there is none
+	 */
+	static Verbosity parseVerbosity(String name) {
+		try {
+			return Verbosity.valueOf(StringUtils.upperCase(StringUtils.trim(name)));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	public static Verbosity getVerbosity(String method) {
+		Verbosity verbosity = methodVerbosities.get(method);
+		return (verbosity == null) ? defaultVerbosity : verbosity;
+	}
+
+	/**
+	 * @param jsonRequest
+	 *            the request as sent, null if it is not available on its own
+	 */
+	static void logRequest(PrintStream logger, JSONRPC2Request request, String jsonRequest) {
+		switch (getVerbosity(request.getMethod())) {
+		case FULL:
+			logger.println((jsonRequest == null) ? request.toJSONString() : jsonRequest);
+			break;
+		case REDACTED:
+			logger.println(redact(request.getMethod(), request.toJSONObject(), false));
+			break;
+		case SUMMARY:
+			long requestSize = ((jsonRequest == null) ? request.toJSONString() : jsonRequest).length();
+			logger.println(Messages.debug_request_summary(request.getMethod(), requestSize));
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * @param jsonResponse
+	 *            the response as received, null if it has not been kept
+	 * @param responseSize
+	 *            size in characters of the response as received, negative if
+	 *            unknown
+	 */
+	static void logResponse(PrintStream logger, String method, JSONRPC2Response response, String jsonResponse,
+			long responseSize) {
+		switch (getVerbosity(method)) {
+		case FULL:
+			logger.println((jsonResponse == null) ? response.toJSONString() : jsonResponse);
+			logger.println(Utils.LOG_SEPARATOR);
+			break;
+		case REDACTED:
+			logger.println(redact(method, response.toJSONObject(), true));
+			logger.println(Utils.LOG_SEPARATOR);
+			break;
+		case SUMMARY:
+			long size = (responseSize < 0) ? response.toJSONString().length() : responseSize;
+			logger.println(Messages.debug_response_summary(method, size, response.indicatesSuccess()));
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static String redact(String method, Map<String, Object> message, boolean response) {
+		StringBuilder sb = new StringBuilder();
+		boolean blobResult = response && DOWNLOAD_TASK_FILE.equals(method);
+		appendValue(sb, message, blobResult ? "result" : BLOB);
+		if (sb.length() > MAX_MESSAGE_LENGTH) {
+			sb.setLength(MAX_MESSAGE_LENGTH);
+			sb.append("... (truncated)");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends a JSON like representation of the value, stopping as soon as
+	 * the maximum message length is reached.
+	 *
+	 * @param blobKey
+	 *            name of the member holding file contents
+	 */
+	private static void appendValue(StringBuilder sb, Object value, String blobKey) {
+		if (sb.length() > MAX_MESSAGE_LENGTH) {
+			return;
+		}
+		if (value instanceof Map) {
+			sb.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				String key = String.valueOf(entry.getKey());
+				sb.append('"').append(JSONValue.escape(key)).append("\":");
+				if (key.equals(blobKey) && (entry.getValue() instanceof String)) {
+					appendBlob(sb, (String) entry.getValue());
+				} else {
+					appendValue(sb, entry.getValue(), blobKey);
+				}
+				if (sb.length() > MAX_MESSAGE_LENGTH) {
+					return;
+				}
+			}
+			sb.append('}');
+		} else if (value instanceof List) {
+			sb.append('[');
+			boolean first = true;
+			for (Object item : (List<?>) value) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				appendValue(sb, item, blobKey);
+				if (sb.length() > MAX_MESSAGE_LENGTH) {
+					return;
+				}
+			}
+			sb.append(']');
+		} else if (value instanceof Object[]) {
+			appendValue(sb, Arrays.asList((Object[]) value), blobKey);
+		} else if (value instanceof String) {
+			String string = (String) value;
+			sb.append('"');
+			if (string.length() > MAX_STRING_LENGTH) {
+				sb.append(JSONValue.escape(string.substring(0, MAX_STRING_LENGTH)));
+				sb.append("...\" (").append(string.length()).append(" chars)");
+			} else {
+				sb.append(JSONValue.escape(string)).append('"');
+			}
+		} else {
+			sb.append(value);
+		}
+	}
+
+	private static void appendBlob(StringBuilder sb, String blob) {
+		sb.append("<").append(blob.length()).append(" chars, md5 ").append(Util.getDigestOf(blob)).append('>');
+	}
+
+}
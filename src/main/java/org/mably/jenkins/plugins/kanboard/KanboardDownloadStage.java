@@ -0,0 +1,140 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+
+/**
+ * Runs the download of task attachments and links a few at a time, through a
+ * {@link KanboardParallelStage}, the fetched files being listed in the order
+ * the downloads were added whatever the completion order. A failing download
+ * doesn't prevent the other ones from being fetched.
+ */
+final class KanboardDownloadStage {
+
+	static final int DEFAULT_PARALLELISM = 4;
+
+	private static volatile int parallelism = DEFAULT_PARALLELISM;
+
+	/**
+	 * A single download.
+	 */
+	abstract static class Download {
+
+		private Fetched fetched;
+
+		/**
+		 * @param logger
+		 *            buffer of the download log messages
+		 * @return the fetched file, null if there was nothing to fetch
+		 */
+		abstract Fetched run(PrintStream logger) throws JSONRPC2SessionException, IOException, InterruptedException;
+
+		/**
+		 * @return path of the fetched file once the stage has run, null if
+		 *         nothing was fetched
+		 */
+		String getPath() {
+			return (fetched == null) ? null : fetched.path;
+		}
+
+	}
+
+	/**
+	 * A file written to the workspace.
+	 */
+	static final class Fetched {
+
+		private final String path;
+		private final long size;
+
+		/**
+		 * @param path
+		 *            path of the written file
+		 * @param size
+		 *            number of bytes written
+		 */
+		Fetched(String path, long size) {
+			this.path = path;
+			this.size = size;
+		}
+	}
+
+	private final PrintStream logger;
+	private final KanboardParallelStage<Fetched> stage;
+
+	/**
+	 * @param logger
+	 *            the build logger
+	 */
+	KanboardDownloadStage(PrintStream logger) {
+		this.logger = logger;
+		this.stage = new KanboardParallelStage<Fetched>(logger, getParallelism());
+	}
+
+	/**
+	 * @param value
+	 *            maximum number of downloads run at the same time, 1 to run
+	 *            them one after the other
+	 */
+	static void configure(int value) {
+		parallelism = Math.max(value, 1);
+	}
+
+	/**
+	 * @return number of downloads run at the same time, never more than the
+	 *         number of requests allowed in flight per endpoint
+	 */
+	static int getParallelism() {
+		return KanboardParallelStage.limit(parallelism);
+	}
+
+	void add(final Download download) {
+		stage.add(new KanboardParallelStage.Task<Fetched>() {
+			@Override
+			Fetched run(PrintStream logger) throws JSONRPC2SessionException, IOException, InterruptedException {
+				long start = System.currentTimeMillis();
+				Fetched fetched = download.run(logger);
+				// Read once the stage has run, after waiting for this task
+				download.fetched = fetched;
+				if (fetched != null) {
+					logger.println(Messages.file_fetched(fetched.path, fetched.size,
+							System.currentTimeMillis() - start));
+				}
+				return fetched;
+			}
+		});
+	}
+
+	/**
+	 * Runs all the downloads added so far, writing their log messages to the
+	 * build log in order, the file fetched by each download being then
+	 * available from {@link Download#getPath()}.
+	 *
+	 * @throws JSONRPC2SessionException
+	 *             the first non I/O failure in download order, once all the
+	 *             downloads are done
+	 */
+	void run() throws JSONRPC2SessionException, AbortException, InterruptedException {
+
+		long start = System.currentTimeMillis();
+		List<Fetched> results = stage.run();
+
+		int count = 0;
+		long size = 0;
+		for (Fetched fetched : results) {
+			if (fetched != null) {
+				count++;
+				size += fetched.size;
+			}
+		}
+		if (count > 0) {
+			logger.println(Messages.files_fetched(count, size, System.currentTimeMillis() - start, stage.getWidth()));
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+
+/**
+ * Pipeline step fetching a Kanboard task and its attachments, the Pipeline
+ * counterpart of {@link KanboardTaskFetcher}. It runs on the controller
+ * without blocking the Pipeline thread, and only needs a node to fetch links
+ * and attachments into the workspace. It returns a map holding the task
+ * {@code id}, {@code url}, {@code title}, {@code creator}, {@code owner}, the
+ * paths of the fetched {@code files} and of the task {@code json} file, or
+ * null if there is no such task. Given a {@code taskQuery}, it fetches all the
+ * matching tasks instead, and returns a map holding the list of their
+ * {@code tasks} and the path of their index {@code json} file. Exactly one of
+ * {@code taskReference} and {@code taskQuery} must be given.
+ */
+public class KanboardFetchStep extends AbstractStepImpl {
+
+	static final String RESULT_ID = "id";
+	static final String RESULT_URL = "url";
+	static final String RESULT_TITLE = "title";
+	static final String RESULT_CREATOR = "creator";
+	static final String RESULT_OWNER = "owner";
+	static final String RESULT_FILES = "files";
+	static final String RESULT_JSON = "json";
+	static final String RESULT_TASKS = "tasks";
+
+	private final String projectIdentifier;
+
+	private String taskReference;
+	private String taskLinks;
+	private String taskAttachments;
+	private String taskQuery;
+
+	@DataBoundConstructor
+	public KanboardFetchStep(String projectIdentifier) {
+		this.projectIdentifier = projectIdentifier;
+	}
+
+	public String getProjectIdentifier() {
+		return projectIdentifier;
+	}
+
+	public String getTaskReference() {
+		return taskReference;
+	}
+
+	@DataBoundSetter
+	public void setTaskReference(String taskReference) {
+		this.taskReference = taskReference;
+	}
+
+	public String getTaskLinks() {
+		return taskLinks;
+	}
+
+	@DataBoundSetter
+	public void setTaskLinks(String taskLinks) {
+		this.taskLinks = taskLinks;
+	}
+
+	public String getTaskAttachments() {
+		return taskAttachments;
+	}
+
+	@DataBoundSetter
+	public void setTaskAttachments(String taskAttachments) {
+		this.taskAttachments = taskAttachments;
+	}
+
+	public String getTaskQuery() {
+		return taskQuery;
+	}
+
+	@DataBoundSetter
+	public void setTaskQuery(String taskQuery) {
+		this.taskQuery = taskQuery;
+	}
+
+	public static final class Execution extends AbstractSynchronousNonBlockingStepExecution<Map<String, Object>> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Inject
+		private transient KanboardFetchStep step;
+
+		@StepContextParameter
+		private transient TaskListener listener;
+
+		@StepContextParameter
+		private transient EnvVars env;
+
+		@Override
+		protected Map<String, Object> run() throws Exception {
+
+			if (StringUtils.isBlank(step.taskReference) == StringUtils.isBlank(step.taskQuery)) {
+				throw new AbortException(Messages.fetch_step_reference_or_query());
+			}
+
+			// Only available within a node block
+			FilePath workspace = getContext().get(FilePath.class);
+
+			KanboardTaskFetcher fetcher = new KanboardTaskFetcher(step.projectIdentifier, step.taskReference);
+
+			String[] taskLinksValue = Utils.getCSVStringValue(env.expand(step.taskLinks));
+			String[] taskAttachmentsValue = Utils.getCSVStringValue(env.expand(step.taskAttachments));
+
+			if (StringUtils.isNotBlank(step.taskQuery)) {
+				KanboardTaskFetcher.FetchedTasks tasks;
+				try {
+					tasks = fetcher.fetchTasks(env.expand(step.projectIdentifier), env.expand(step.taskQuery),
+							taskLinksValue, taskAttachmentsValue, workspace, listener.getLogger());
+				} catch (JSONRPC2SessionException e) {
+					throw new AbortException(e.getMessage());
+				}
+
+				List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+				for (KanboardTaskFetcher.FetchedTask task : tasks.getTasks()) {
+					results.add(getResult(task));
+				}
+				Map<String, Object> result = new HashMap<String, Object>();
+				result.put(RESULT_TASKS, results);
+				result.put(RESULT_JSON, tasks.getJSONPath());
+				return result;
+			}
+
+			KanboardTaskFetcher.FetchedTask task;
+			try {
+				task = fetcher.fetchTask(env.expand(step.projectIdentifier), env.expand(step.taskReference),
+						taskLinksValue, taskAttachmentsValue, workspace, listener.getLogger());
+			} catch (JSONRPC2SessionException e) {
+				throw new AbortException(e.getMessage());
+			}
+
+			return (task == null) ? null : getResult(task);
+		}
+
+		/**
+		 * The step state isn't persisted, it is failed rather than left
+		 * waiting forever when Jenkins restarted while it was running.
+		 */
+		@Override
+		public void onResume() {
+			getContext().onFailure(new AbortException(Messages.step_resume_unsupported(DescriptorImpl.FUNCTION_NAME)));
+		}
+
+		private static Map<String, Object> getResult(KanboardTaskFetcher.FetchedTask task) {
+			Map<String, Object> result = new HashMap<String, Object>();
+			result.put(RESULT_ID, task.getId());
+			result.put(RESULT_URL, task.getURL());
+			result.put(RESULT_TITLE, task.getTitle());
+			result.put(RESULT_CREATOR, task.getCreator());
+			result.put(RESULT_OWNER, task.getOwner());
+			result.put(RESULT_FILES, new ArrayList<String>(task.getFiles()));
+			result.put(RESULT_JSON, task.getJSONPath());
+			return result;
+		}
+	}
+
+	@Extension(optional = true)
+	public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+		static final String FUNCTION_NAME = "kanboardFetch";
+
+		public DescriptorImpl() {
+			super(Execution.class);
+		}
+
+		@Override
+		public String getFunctionName() {
+			return FUNCTION_NAME;
+		}
+
+		@Override
+		public String getDisplayName() {
+			return Messages.kanboard_fetch_step();
+		}
+	}
+
+}
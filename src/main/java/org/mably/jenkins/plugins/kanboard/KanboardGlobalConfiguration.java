@@ -3,6 +3,8 @@ package org.mably.jenkins.plugins.kanboard;
 import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.servlet.ServletException;
 
@@ -31,14 +33,46 @@ public class KanboardGlobalConfiguration extends GlobalConfiguration {
 	static final String APITOKENCREDENTIALID_FIELD = "apiTokenCredentialId";
 	static final String ATTACHMENTMAXSIZE_FIELD = "attachmentMaxSize";
 	static final String DEBUGMODE_FIELD = "debugMode";
+	static final String DEBUGVERBOSITY_FIELD = "debugVerbosity";
+	static final String DEBUGMETHODVERBOSITIES_FIELD = "debugMethodVerbosities";
+	static final String HTTPCONNECTTIMEOUT_FIELD = "httpConnectTimeout";
+	static final String HTTPREADTIMEOUT_FIELD = "httpReadTimeout";
+	static final String METADATACACHETTL_FIELD = "metadataCacheTtl";
+	static final String USERCACHETTL_FIELD = "userCacheTtl";
+	static final String RETRYCOUNT_FIELD = "retryCount";
+	static final String RETRYBACKOFF_FIELD = "retryBackoff";
+	static final String BREAKERTHRESHOLD_FIELD = "breakerThreshold";
+	static final String BREAKEROPENDURATION_FIELD = "breakerOpenDuration";
+	static final String MAXCONCURRENTREQUESTS_FIELD = "maxConcurrentRequests";
+	static final String REQUESTSPERSECOND_FIELD = "requestsPerSecond";
+	static final String UPLOADPARALLELISM_FIELD = "uploadParallelism";
+	static final String DOWNLOADPARALLELISM_FIELD = "downloadParallelism";
+	static final String ATTACHMENTCACHESIZE_FIELD = "attachmentCacheSize";
+	static final String OUTBOXENABLED_FIELD = "outboxEnabled";
 
-	static final long DEFAULT_ATTACHMENTMAXSIZE = 1000000;
+	static final long DEFAULT_ATTACHMENTMAXSIZE = 50000000;
 
 	public String endpoint;
 	public String apiToken;
 	public String apiTokenCredentialId;
 	public long attachmentMaxSize = DEFAULT_ATTACHMENTMAXSIZE;
 	public boolean debugMode;
+	public KanboardDebugLogger.Verbosity debugVerbosity = KanboardDebugLogger.DEFAULT_VERBOSITY;
+	public String debugMethodVerbosities;
+	public int httpConnectTimeout = KanboardHttpTransport.DEFAULT_CONNECTTIMEOUT;
+	public int httpReadTimeout = KanboardHttpTransport.DEFAULT_READTIMEOUT;
+	public int metadataCacheTtl = KanboardMetadataCache.DEFAULT_TTL;
+	public int userCacheTtl = KanboardUserCache.DEFAULT_TTL;
+	public int retryCount = KanboardSession.DEFAULT_RETRYCOUNT;
+	public int retryBackoff = KanboardSession.DEFAULT_RETRYBACKOFF;
+	public int breakerThreshold = KanboardCircuitBreaker.DEFAULT_FAILURETHRESHOLD;
+	public int breakerOpenDuration = KanboardCircuitBreaker.DEFAULT_OPENDURATION;
+	public int maxConcurrentRequests = KanboardRateLimiter.DEFAULT_MAXCONCURRENTREQUESTS;
+	public int requestsPerSecond = KanboardRateLimiter.DEFAULT_REQUESTSPERSECOND;
+	public int uploadParallelism = KanboardUploadStage.DEFAULT_PARALLELISM;
+	public int downloadParallelism = KanboardDownloadStage.DEFAULT_PARALLELISM;
+	public int attachmentCacheSize = KanboardAttachmentCache.DEFAULT_MAXSIZE;
+	public boolean outboxEnabled = KanboardOutbox.DEFAULT_ENABLED;
 
 	/**
 	 * In order to load the persisted global configuration, you have to call
@@ -46,6 +80,7 @@ public class KanboardGlobalConfiguration extends GlobalConfiguration {
 	 */
 	public KanboardGlobalConfiguration() {
 		load();
+		applySettings();
 	}
 
 	/**
@@ -81,6 +116,159 @@ public class KanboardGlobalConfiguration extends GlobalConfiguration {
 		return debugMode;
 	}
 
+	/**
+	 * @return Debug mode verbosity of the API methods
+	 */
+	public KanboardDebugLogger.Verbosity getDebugVerbosity() {
+		return debugVerbosity;
+	}
+
+	/**
+	 * @return Debug mode verbosity overrides, one method=VERBOSITY per line
+	 */
+	public String getDebugMethodVerbosities() {
+		return debugMethodVerbosities;
+	}
+
+	/**
+	 * @return HTTP connect timeout in milliseconds
+	 */
+	public int getHttpConnectTimeout() {
+		return httpConnectTimeout;
+	}
+
+	/**
+	 * @return HTTP read timeout in milliseconds
+	 */
+	public int getHttpReadTimeout() {
+		return httpReadTimeout;
+	}
+
+	/**
+	 * @return Project and column metadata cache time to live in seconds
+	 */
+	public int getMetadataCacheTtl() {
+		return metadataCacheTtl;
+	}
+
+	/**
+	 * @return Project and column metadata cache statistics
+	 */
+	public String getMetadataCacheStatistics() {
+		return Messages.cache_statistics(KanboardMetadataCache.getHits(), KanboardMetadataCache.getMisses());
+	}
+
+	/**
+	 * @return User names and ids cache time to live in seconds
+	 */
+	public int getUserCacheTtl() {
+		return userCacheTtl;
+	}
+
+	/**
+	 * @return User names and ids cache statistics
+	 */
+	public String getUserCacheStatistics() {
+		return Messages.cache_statistics(KanboardUserCache.getHits(), KanboardUserCache.getMisses());
+	}
+
+	/**
+	 * @return Maximum number of retries of a failed read only request
+	 */
+	public int getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * @return Initial retry delay in milliseconds, doubled on each retry
+	 */
+	public int getRetryBackoff() {
+		return retryBackoff;
+	}
+
+	/**
+	 * @return Consecutive failures after which requests to an endpoint fail
+	 *         fast
+	 */
+	public int getBreakerThreshold() {
+		return breakerThreshold;
+	}
+
+	/**
+	 * @return Delay in seconds during which requests to a failing endpoint
+	 *         fail fast
+	 */
+	public int getBreakerOpenDuration() {
+		return breakerOpenDuration;
+	}
+
+	/**
+	 * @return Maximum number of requests in flight per endpoint
+	 */
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	/**
+	 * @return Maximum number of requests per second per endpoint
+	 */
+	public int getRequestsPerSecond() {
+		return requestsPerSecond;
+	}
+
+	/**
+	 * @return Maximum number of task attachments and links uploaded at the
+	 *         same time
+	 */
+	public int getUploadParallelism() {
+		return uploadParallelism;
+	}
+
+	/**
+	 * @return Maximum number of task attachments and links downloaded at the
+	 *         same time
+	 */
+	public int getDownloadParallelism() {
+		return downloadParallelism;
+	}
+
+	/**
+	 * @return Maximum size in megabytes of the fetched attachments cache of
+	 *         each node
+	 */
+	public int getAttachmentCacheSize() {
+		return attachmentCacheSize;
+	}
+
+	/**
+	 * @return True if the task publications failing because Kanboard is
+	 *         unreachable are journaled and replayed later
+	 */
+	public boolean isOutboxEnabled() {
+		return outboxEnabled;
+	}
+
+	/**
+	 * @return Circuit breakers of the endpoints used so far
+	 */
+	public List<KanboardCircuitBreaker> getCircuitBreakers() {
+		return KanboardCircuitBreaker.all();
+	}
+
+	private void applySettings() {
+		KanboardHttpTransport.get().configure(httpConnectTimeout, httpReadTimeout);
+		KanboardMetadataCache.setTtl(metadataCacheTtl);
+		KanboardUserCache.setTtl(userCacheTtl);
+		KanboardSession.configureRetries(retryCount, retryBackoff);
+		KanboardCircuitBreaker.configure(breakerThreshold, breakerOpenDuration);
+		KanboardRateLimiter.configure(maxConcurrentRequests, requestsPerSecond);
+		KanboardUploadStage.configure(uploadParallelism);
+		KanboardDownloadStage.configure(downloadParallelism);
+		KanboardAttachmentCache.configure(attachmentCacheSize);
+		KanboardOutbox.configure(outboxEnabled);
+		KanboardDebugLogger.configure(debugVerbosity, debugMethodVerbosities);
+	}
+
 	/**
 	 * This human readable name is used in the configuration screen.
 	 */
@@ -100,6 +288,15 @@ public class KanboardGlobalConfiguration extends GlobalConfiguration {
 		return FormValidation.ok();
 	}
 
+	public FormValidation doCheckDebugMethodVerbosities(@QueryParameter String value) {
+		List<String> invalidLines = new ArrayList<String>();
+		KanboardDebugLogger.parseOverrides(value, invalidLines);
+		if (!invalidLines.isEmpty()) {
+			return FormValidation.warning(Messages.debug_verbosity_invalid(StringUtils.join(invalidLines, ", ")));
+		}
+		return FormValidation.ok();
+	}
+
 	public FormValidation doCheckApiToken(@QueryParameter String apiToken) throws IOException, ServletException {
 		return FormValidation.ok();
 	}
@@ -131,7 +328,27 @@ public class KanboardGlobalConfiguration extends GlobalConfiguration {
 		apiTokenCredentialId = formData.getString(APITOKENCREDENTIALID_FIELD);
 		attachmentMaxSize = formData.getLong(ATTACHMENTMAXSIZE_FIELD);
 		debugMode = formData.getBoolean(DEBUGMODE_FIELD);
+		debugVerbosity = KanboardDebugLogger.parseVerbosity(formData.optString(DEBUGVERBOSITY_FIELD));
+		if (debugVerbosity == null) {
+			debugVerbosity = KanboardDebugLogger.DEFAULT_VERBOSITY;
+		}
+		debugMethodVerbosities = formData.optString(DEBUGMETHODVERBOSITIES_FIELD);
+		httpConnectTimeout = formData.getInt(HTTPCONNECTTIMEOUT_FIELD);
+		httpReadTimeout = formData.getInt(HTTPREADTIMEOUT_FIELD);
+		metadataCacheTtl = formData.getInt(METADATACACHETTL_FIELD);
+		userCacheTtl = formData.getInt(USERCACHETTL_FIELD);
+		retryCount = formData.getInt(RETRYCOUNT_FIELD);
+		retryBackoff = formData.getInt(RETRYBACKOFF_FIELD);
+		breakerThreshold = formData.getInt(BREAKERTHRESHOLD_FIELD);
+		breakerOpenDuration = formData.getInt(BREAKEROPENDURATION_FIELD);
+		maxConcurrentRequests = formData.getInt(MAXCONCURRENTREQUESTS_FIELD);
+		requestsPerSecond = formData.getInt(REQUESTSPERSECOND_FIELD);
+		uploadParallelism = formData.getInt(UPLOADPARALLELISM_FIELD);
+		downloadParallelism = formData.getInt(DOWNLOADPARALLELISM_FIELD);
+		attachmentCacheSize = formData.getInt(ATTACHMENTCACHESIZE_FIELD);
+		outboxEnabled = formData.getBoolean(OUTBOXENABLED_FIELD);
 		save();
+		applySettings();
 		return super.configure(req, formData);
 	}
 
@@ -0,0 +1,143 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import hudson.ProxyConfiguration;
+
+/**
+ * Default {@link KanboardTransport}, backed by the JDK HTTP client. Its
+ * keep-alive cache reuses connections across requests to the same endpoint,
+ * and it verifies the server host name of HTTPS endpoints. Requests go through
+ * the Jenkins proxy, along with its credentials.
+ */
+public final class KanboardHttpTransport implements KanboardTransport {
+
+	static final int DEFAULT_CONNECTTIMEOUT = 10000;
+	static final int DEFAULT_READTIMEOUT = 60000;
+
+	private static final String CONTENT_TYPE = "application/json";
+	private static final String CHARSET = "UTF-8";
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final KanboardHttpTransport INSTANCE = new KanboardHttpTransport();
+
+	private volatile int connectTimeout = DEFAULT_CONNECTTIMEOUT;
+	private volatile int readTimeout = DEFAULT_READTIMEOUT;
+
+	private KanboardHttpTransport() {
+	}
+
+	public static KanboardHttpTransport get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param connectTimeout
+	 *            connect timeout in milliseconds, 0 for no timeout
+	 * @param readTimeout
+	 *            read timeout in milliseconds, 0 for no timeout
+	 */
+	public void configure(int connectTimeout, int readTimeout) {
+		this.connectTimeout = Math.max(connectTimeout, 0);
+		this.readTimeout = Math.max(readTimeout, 0);
+	}
+
+	@Override
+	public String post(URL url, Map<String, String> headers, String body) throws IOException {
+		return post(url, headers, RequestBody.of(body), STRING_RESPONSE);
+	}
+
+	@Override
+	public <T> T post(URL url, Map<String, String> headers, RequestBody body, ResponseHandler<T> handler)
+			throws IOException {
+
+		HttpURLConnection connection = (HttpURLConnection) ProxyConfiguration.open(url);
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setUseCaches(false);
+		connection.setRequestProperty("Content-Type", CONTENT_TYPE + "; charset=" + CHARSET);
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+
+		// A streamed request is never sent again by the JDK on a stale
+		// connection, retries are left to KanboardSession which only sends
+		// read only requests again
+		long length = body.getContentLength();
+		if (length >= 0) {
+			connection.setFixedLengthStreamingMode(length);
+		} else {
+			connection.setChunkedStreamingMode(0);
+		}
+
+		OutputStream out = connection.getOutputStream();
+		try {
+			body.writeTo(out);
+		} finally {
+			out.close();
+		}
+
+		int status = connection.getResponseCode();
+		if (status != HttpURLConnection.HTTP_OK) {
+			drain(connection.getErrorStream());
+			throw new HttpStatusException(status, connection.getResponseMessage());
+		}
+
+		InputStream in = connection.getInputStream();
+		try {
+			T result = handler.handle(new InputStreamReader(in, getCharset(connection.getContentType())));
+			drain(in);
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the rest of a response body, so that the connection is kept alive
+	 * once the stream is closed.
+	 */
+	private static void drain(InputStream in) throws IOException {
+		if (in == null) {
+			return;
+		}
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (in.read(buffer) != -1) {
+				// Discarded
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the charset declared by the given response content type, UTF-8
+	 *         if there is none as JSON is UTF-8 encoded by default
+	 */
+	static String getCharset(String contentType) {
+		if (contentType != null) {
+			for (String parameter : contentType.split(";")) {
+				String[] nameValue = parameter.split("=", 2);
+				if ((nameValue.length == 2) && "charset".equalsIgnoreCase(nameValue[0].trim())) {
+					String charset = StringUtils.strip(nameValue[1].trim(), "\"");
+					if (StringUtils.isNotEmpty(charset)) {
+						return charset;
+					}
+				}
+			}
+		}
+		return CHARSET;
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+
+/**
+ * Extension point wrapping every Kanboard API call sent through
+ * {@link Kanboard}. Interceptors are chained by decreasing ordinal, each one
+ * decides whether, and how many times, the rest of the chain is invoked.
+ */
+public abstract class KanboardInterceptor implements ExtensionPoint {
+
+	/**
+	 * The rest of the interceptor chain, ending with the actual request.
+	 */
+	public interface Chain {
+
+		JSONRPC2Response proceed() throws JSONRPC2SessionException;
+
+	}
+
+	/**
+	 * @param call
+	 *            the intercepted call
+	 * @param chain
+	 *            the rest of the chain, to be invoked to send the request
+	 * @return the call response
+	 */
+	public abstract JSONRPC2Response intercept(KanboardCall call, Chain chain) throws JSONRPC2SessionException;
+
+	/**
+	 * @return all the registered interceptors, outermost first
+	 */
+	public static List<KanboardInterceptor> all() {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null) {
+			return Collections.emptyList();
+		}
+		return ExtensionList.lookup(KanboardInterceptor.class);
+	}
+
+}
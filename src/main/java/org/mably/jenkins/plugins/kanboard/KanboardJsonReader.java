@@ -0,0 +1,454 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Error;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Minimal pull parser reading JSON values one at a time from a stream, so that
+ * large JSON-RPC results can be processed without materializing the whole
+ * response. Values which are not needed are skipped without being allocated.
+ */
+final class KanboardJsonReader {
+
+	/**
+	 * Reads the {@code result} member of a JSON-RPC response.
+	 */
+	interface ResultHandler {
+
+		Object read(KanboardJsonReader reader) throws IOException;
+
+	}
+
+	/**
+	 * Thrown when the stream doesn't hold valid JSON.
+	 */
+	static final class MalformedJsonException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		MalformedJsonException(String message) {
+			super(message);
+		}
+	}
+
+	private static final int EOF = -1;
+
+	private final Reader in;
+	private final char[] buffer = new char[8192];
+	private int pos;
+	private int limit;
+	private long count;
+
+	KanboardJsonReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * @return number of characters read so far
+	 */
+	long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return number of characters consumed so far, the characters read ahead
+	 *         not being counted
+	 */
+	long getOffset() {
+		return count - limit + pos;
+	}
+
+	/**
+	 * Reads a JSON-RPC response whose result is read by the given handler.
+	 */
+	JSONRPC2Response readResponse(ResultHandler handler) throws IOException {
+		Object id = null;
+		Object result = null;
+		JSONObject error = null;
+		boolean hasResult = false;
+		beginObject();
+		while (hasNext()) {
+			String name = nextName();
+			if ("result".equals(name)) {
+				result = handler.read(this);
+				hasResult = true;
+			} else if ("error".equals(name)) {
+				error = (JSONObject) readValue();
+			} else if ("id".equals(name)) {
+				id = readValue();
+			} else {
+				skipValue();
+			}
+		}
+		endObject();
+		if (error != null) {
+			int code = Integer.parseInt(String.valueOf(error.get("code")));
+			return new JSONRPC2Response(new JSONRPC2Error(code, String.valueOf(error.get("message")),
+					error.get("data")), id);
+		}
+		if (!hasResult) {
+			throw new MalformedJsonException("JSON-RPC response holds neither result nor error");
+		}
+		return new JSONRPC2Response(result, id);
+	}
+
+	/**
+	 * @return a handler reading a result which is either an array of objects,
+	 *         only the given fields of the objects being kept, or any other
+	 *         value
+	 */
+	static ResultHandler projection(String... fields) {
+		final Set<String> keptFields = new HashSet<String>(Arrays.asList(fields));
+		return new ResultHandler() {
+			@Override
+			public Object read(KanboardJsonReader reader) throws IOException {
+				if (reader.peek() != '[') {
+					return reader.readValue();
+				}
+				JSONArray items = new JSONArray();
+				reader.beginArray();
+				while (reader.hasNext()) {
+					if (reader.peek() != '{') {
+						items.add(reader.readValue());
+						continue;
+					}
+					JSONObject item = new JSONObject();
+					reader.beginObject();
+					while (reader.hasNext()) {
+						String name = reader.nextName();
+						if (keptFields.contains(name)) {
+							item.put(name, reader.readValue());
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+					items.add(item);
+				}
+				reader.endArray();
+				return items;
+			}
+		};
+	}
+
+	/**
+	 * @return the next non whitespace character, without consuming it
+	 */
+	int peek() throws IOException {
+		while (true) {
+			if (pos == limit && !fill()) {
+				return EOF;
+			}
+			char c = buffer[pos];
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				pos++;
+			} else {
+				return c;
+			}
+		}
+	}
+
+	void beginObject() throws IOException {
+		expect('{');
+	}
+
+	void endObject() throws IOException {
+		expect('}');
+	}
+
+	void beginArray() throws IOException {
+		expect('[');
+	}
+
+	void endArray() throws IOException {
+		expect(']');
+	}
+
+	/**
+	 * @return true if the current object or array has another member,
+	 *         consuming the separating comma if any
+	 */
+	boolean hasNext() throws IOException {
+		int c = peek();
+		if (c == '}' || c == ']' || c == EOF) {
+			return false;
+		}
+		if (c == ',') {
+			pos++;
+		}
+		return true;
+	}
+
+	String nextName() throws IOException {
+		String name = nextString();
+		expect(':');
+		return name;
+	}
+
+	String nextString() throws IOException {
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return sb.toString();
+			} else if (c == '\\') {
+				sb.append(readEscape());
+			} else if (c == EOF) {
+				throw new MalformedJsonException("Unterminated string");
+			} else {
+				sb.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next string, its characters being written to the given writer
+	 * as they are read instead of being held in memory.
+	 *
+	 * @return number of characters written
+	 */
+	long nextString(Writer out) throws IOException {
+		expect('"');
+		long length = 0;
+		while (true) {
+			if (pos == limit && !fill()) {
+				throw new MalformedJsonException("Unterminated string");
+			}
+			// Copy the characters up to the next quote or escape at once
+			int start = pos;
+			while (pos < limit && buffer[pos] != '"' && buffer[pos] != '\\') {
+				pos++;
+			}
+			if (pos > start) {
+				out.write(buffer, start, pos - start);
+				length += pos - start;
+			}
+			if (pos == limit) {
+				continue;
+			}
+			if (buffer[pos++] == '"') {
+				return length;
+			}
+			out.write(readEscape());
+			length++;
+		}
+	}
+
+	/**
+	 * Reads the next value, objects and arrays being fully materialized.
+	 */
+	Object readValue() throws IOException {
+		int c = peek();
+		switch (c) {
+		case '{':
+			JSONObject object = new JSONObject();
+			beginObject();
+			while (hasNext()) {
+				String name = nextName();
+				object.put(name, readValue());
+			}
+			endObject();
+			return object;
+		case '[':
+			JSONArray array = new JSONArray();
+			beginArray();
+			while (hasNext()) {
+				array.add(readValue());
+			}
+			endArray();
+			return array;
+		case '"':
+			return nextString();
+		case 't':
+			readLiteral("true");
+			return Boolean.TRUE;
+		case 'f':
+			readLiteral("false");
+			return Boolean.FALSE;
+		case 'n':
+			readLiteral("null");
+			return null;
+		default:
+			return readNumber();
+		}
+	}
+
+	/**
+	 * Skips the next value without allocating it.
+	 */
+	void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			int c = peek();
+			switch (c) {
+			case '{':
+			case '[':
+				pos++;
+				depth++;
+				break;
+			case '}':
+			case ']':
+				pos++;
+				depth--;
+				break;
+			case ',':
+			case ':':
+				pos++;
+				break;
+			case '"':
+				pos++;
+				skipString();
+				break;
+			case EOF:
+				throw new MalformedJsonException("Unexpected end of input");
+			default:
+				skipScalar();
+				break;
+			}
+		} while (depth > 0);
+	}
+
+	private void skipString() throws IOException {
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				readEscape();
+			} else if (c == EOF) {
+				throw new MalformedJsonException("Unterminated string");
+			}
+		}
+	}
+
+	private void skipScalar() throws IOException {
+		while (true) {
+			if (pos == limit && !fill()) {
+				return;
+			}
+			char c = buffer[pos];
+			if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				return;
+			}
+			pos++;
+		}
+	}
+
+	private Object readNumber() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		boolean decimal = false;
+		while (true) {
+			if (pos == limit && !fill()) {
+				break;
+			}
+			char c = buffer[pos];
+			if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+				sb.append(c);
+			} else if (c == '.' || c == 'e' || c == 'E') {
+				sb.append(c);
+				decimal = true;
+			} else {
+				break;
+			}
+			pos++;
+		}
+		if (sb.length() == 0) {
+			throw new MalformedJsonException("Unexpected character at offset " + (count - limit + pos));
+		}
+		String number = sb.toString();
+		try {
+			if (decimal) {
+				return Double.valueOf(number);
+			}
+			// Same number types as the json-smart parser
+			BigInteger value = new BigInteger(number);
+			if (value.bitLength() < Integer.SIZE) {
+				return Integer.valueOf(value.intValue());
+			} else if (value.bitLength() < Long.SIZE) {
+				return Long.valueOf(value.longValue());
+			}
+			return value;
+		} catch (NumberFormatException e) {
+			throw new MalformedJsonException("Invalid number: " + number);
+		}
+	}
+
+	private char readEscape() throws IOException {
+		int c = read();
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			return (char) c;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(read(), 16);
+				if (digit < 0) {
+					throw new MalformedJsonException("Invalid unicode escape");
+				}
+				value = (value << 4) | digit;
+			}
+			return (char) value;
+		default:
+			throw new MalformedJsonException("Invalid escape sequence");
+		}
+	}
+
+	private void readLiteral(String literal) throws IOException {
+		for (int i = 0; i < literal.length(); i++) {
+			if (read() != literal.charAt(i)) {
+				throw new MalformedJsonException("Expected " + literal);
+			}
+		}
+	}
+
+	private void expect(char expected) throws IOException {
+		int c = peek();
+		if (c != expected) {
+			throw new MalformedJsonException("Expected '" + expected + "' at offset " + (count - limit + pos));
+		}
+		pos++;
+	}
+
+	private int read() throws IOException {
+		if (pos == limit && !fill()) {
+			return EOF;
+		}
+		return buffer[pos++];
+	}
+
+	private boolean fill() throws IOException {
+		int n = in.read(buffer, 0, buffer.length);
+		if (n <= 0) {
+			return false;
+		}
+		pos = 0;
+		limit = n;
+		count += n;
+		return true;
+	}
+
+}
@@ -0,0 +1,310 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Downloads the content of an attachment link straight to the workspace, on
+ * the node holding it. The validators returned by the server are stored next
+ * to the fetched file, so that fetching it again only downloads it if it has
+ * changed, and an interrupted download is resumed where it stopped as long as
+ * the content didn't change in the meantime.
+ */
+final class KanboardLinkDownloader {
+
+	private static final String HIDDEN_PREFIX = ".";
+	private static final String PART_SUFFIX = ".part";
+	private static final String VALIDATORS_SUFFIX = ".validators";
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String WEAK_ETAG_PREFIX = "W/";
+	private static final int BUFFER_SIZE = 8192;
+
+	private KanboardLinkDownloader() {
+	}
+
+	private enum Status {
+		FETCHED, RESUMED, NOT_MODIFIED, TOO_BIG, INCOMPLETE, FAILED
+	}
+
+	private static final class Result implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Status status;
+		private final long size;
+		private final long offset;
+		private final String reason;
+
+		Result(Status status, long size, long offset, String reason) {
+			this.status = status;
+			this.size = size;
+			this.offset = offset;
+			this.reason = reason;
+		}
+	}
+
+	/**
+	 * Downloads the content of a link to the given file, unless the file
+	 * already holds the current content.
+	 *
+	 * @return the size of the file
+	 * @throws IOException
+	 *             if the content couldn't be fetched, the message telling why
+	 */
+	static long download(URL url, FilePath file, PrintStream logger) throws IOException, InterruptedException {
+
+		String proxyHost = null;
+		int proxyPort = 0;
+		Proxy proxy = Utils.getJenkinsProxy(url);
+		if (proxy != null) {
+			InetSocketAddress address = (InetSocketAddress) proxy.address();
+			proxyHost = address.getHostString();
+			proxyPort = address.getPort();
+		}
+
+		int connectTimeout = KanboardHttpTransport.DEFAULT_CONNECTTIMEOUT;
+		int readTimeout = KanboardHttpTransport.DEFAULT_READTIMEOUT;
+		long maxSize = KanboardGlobalConfiguration.DEFAULT_ATTACHMENTMAXSIZE;
+		KanboardGlobalConfiguration config = KanboardGlobalConfiguration.get();
+		if (config != null) {
+			connectTimeout = config.getHttpConnectTimeout();
+			readTimeout = config.getHttpReadTimeout();
+			maxSize = config.getAttachmentMaxSize();
+		}
+
+		Result result;
+		try {
+			result = file.act(new Download(url.toString(), proxyHost, proxyPort, connectTimeout, readTimeout,
+					maxSize));
+		} catch (IOException e) {
+			// Whatever was received is kept to be resumed next time
+			throw new IOException(Messages.link_fetch_failed(url, e.getMessage()), e);
+		}
+
+		switch (result.status) {
+		case NOT_MODIFIED:
+			logger.println(Messages.link_not_modified(url));
+			break;
+		case RESUMED:
+			logger.println(Messages.link_resumed(url, result.offset));
+			break;
+		case TOO_BIG:
+			throw new IOException(Messages.link_too_big(url, maxSize));
+		case INCOMPLETE:
+			throw new IOException(Messages.link_incomplete(url, result.size, result.offset));
+		case FAILED:
+			throw new IOException(Messages.link_fetch_failed(url, result.reason));
+		default:
+			break;
+		}
+		return result.size;
+	}
+
+	private static final class Download extends MasterToSlaveFileCallable<Result> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String url;
+		private final String proxyHost;
+		private final int proxyPort;
+		private final int connectTimeout;
+		private final int readTimeout;
+		private final long maxSize;
+
+		Download(String url, String proxyHost, int proxyPort, int connectTimeout, int readTimeout, long maxSize) {
+			this.url = url;
+			this.proxyHost = proxyHost;
+			this.proxyPort = proxyPort;
+			this.connectTimeout = connectTimeout;
+			this.readTimeout = readTimeout;
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public Result invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+
+			File dir = file.getParentFile();
+			dir.mkdirs();
+			File part = new File(dir, HIDDEN_PREFIX + file.getName() + PART_SUFFIX);
+			File validatorsFile = new File(dir, HIDDEN_PREFIX + file.getName() + VALIDATORS_SUFFIX);
+
+			// The validators are those of the partial content if any, of the
+			// fetched file otherwise
+			Properties validators = loadValidators(validatorsFile);
+			String etag = (validators == null) ? null : validators.getProperty(ETAG);
+			String lastModified = (validators == null) ? null : validators.getProperty(LAST_MODIFIED);
+
+			long offset = 0;
+			HttpURLConnection conn = openConnection();
+			try {
+				if (part.isFile() && (part.length() > 0)) {
+					// Resume only if the content is still the same, a weak
+					// entity tag can't tell
+					String ifRange = StringUtils.isNotBlank(etag) && !etag.startsWith(WEAK_ETAG_PREFIX) ? etag
+							: lastModified;
+					if (StringUtils.isNotBlank(ifRange)) {
+						offset = part.length();
+						conn.setRequestProperty("Range", "bytes=" + offset + "-");
+						conn.setRequestProperty("If-Range", ifRange);
+					}
+				} else if (file.isFile() && (validators != null)) {
+					if (StringUtils.isNotBlank(etag)) {
+						conn.setRequestProperty("If-None-Match", etag);
+					}
+					if (StringUtils.isNotBlank(lastModified)) {
+						conn.setRequestProperty("If-Modified-Since", lastModified);
+					}
+				}
+
+				int code = conn.getResponseCode();
+				if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					return new Result(Status.NOT_MODIFIED, file.length(), 0, null);
+				} else if (code == HttpURLConnection.HTTP_PARTIAL) {
+					String range = conn.getHeaderField("Content-Range");
+					if ((range == null) || !range.startsWith("bytes " + offset + "-")) {
+						// Not the requested range, start over next time
+						discard(part, validatorsFile);
+						return new Result(Status.FAILED, 0, 0, code + " " + conn.getResponseMessage());
+					}
+				} else if (code == HttpURLConnection.HTTP_OK) {
+					// Whole content, the range was ignored or the content
+					// changed
+					offset = 0;
+					storeValidators(validatorsFile, conn.getHeaderField(ETAG), conn.getHeaderField(LAST_MODIFIED));
+				} else {
+					if (code == 416) {
+						// Range not satisfiable, start over next time
+						discard(part, validatorsFile);
+					}
+					return new Result(Status.FAILED, 0, 0, code + " " + conn.getResponseMessage());
+				}
+
+				long length = conn.getContentLengthLong();
+				if ((maxSize != 0) && (length >= 0) && (offset + length > maxSize)) {
+					discard(part, validatorsFile);
+					return new Result(Status.TOO_BIG, 0, 0, null);
+				}
+
+				long size = offset;
+				InputStream in = conn.getInputStream();
+				OutputStream out = new FileOutputStream(part, offset > 0);
+				try {
+					byte[] buffer = new byte[BUFFER_SIZE];
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						size += read;
+						if ((maxSize != 0) && (size > maxSize)) {
+							out.close();
+							discard(part, validatorsFile);
+							return new Result(Status.TOO_BIG, 0, 0, null);
+						}
+						out.write(buffer, 0, read);
+						if (Thread.interrupted()) {
+							throw new InterruptedException();
+						}
+					}
+				} finally {
+					IOUtils.closeQuietly(out);
+					IOUtils.closeQuietly(in);
+				}
+
+				if ((length >= 0) && (size - offset < length)) {
+					// Connection closed early, kept to be resumed
+					return new Result(Status.INCOMPLETE, size, offset + length, null);
+				}
+
+				Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				return new Result((offset > 0) ? Status.RESUMED : Status.FETCHED, size, offset, null);
+
+			} finally {
+				conn.disconnect();
+			}
+		}
+
+		private HttpURLConnection openConnection() throws IOException {
+			URL target = new URL(url);
+			HttpURLConnection conn;
+			if (proxyHost == null) {
+				conn = (HttpURLConnection) target.openConnection();
+			} else {
+				conn = (HttpURLConnection) target
+						.openConnection(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort)));
+			}
+			conn.setRequestMethod("GET");
+			conn.setConnectTimeout(Math.max(connectTimeout, 0));
+			conn.setReadTimeout(Math.max(readTimeout, 0));
+			// Byte ranges are meaningless on a compressed content
+			conn.setRequestProperty("Accept-Encoding", "identity");
+			return conn;
+		}
+
+		/**
+		 * Drops a partial content along with its validators, the fetched
+		 * file then being downloaded again whatever its state.
+		 */
+		private static void discard(File part, File validatorsFile) {
+			part.delete();
+			validatorsFile.delete();
+		}
+
+		private static Properties loadValidators(File validatorsFile) {
+			if (!validatorsFile.isFile()) {
+				return null;
+			}
+			Properties validators = new Properties();
+			InputStream in = null;
+			try {
+				in = new FileInputStream(validatorsFile);
+				validators.load(in);
+			} catch (IOException e) {
+				return null;
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+			return validators;
+		}
+
+		private static void storeValidators(File validatorsFile, String etag, String lastModified)
+				throws IOException {
+			if (StringUtils.isBlank(etag) && StringUtils.isBlank(lastModified)) {
+				validatorsFile.delete();
+				return;
+			}
+			Properties validators = new Properties();
+			if (StringUtils.isNotBlank(etag)) {
+				validators.setProperty(ETAG, etag);
+			}
+			if (StringUtils.isNotBlank(lastModified)) {
+				validators.setProperty(LAST_MODIFIED, lastModified);
+			}
+			OutputStream out = new FileOutputStream(validatorsFile);
+			try {
+				validators.store(out, null);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Controller wide cache of Kanboard projects and project columns, which almost
+ * never change but are needed by every publisher, fetcher and trigger run.
+ * The cache holds its own copies, callers always get copies they are free to
+ * modify without affecting the cached values or each other.
+ */
+public final class KanboardMetadataCache {
+
+	static final int DEFAULT_TTL = 300;
+
+	private static final int MAX_ENTRIES = 500;
+
+	private static final KanboardCache<String, JSONObject> PROJECTS = new KanboardCache<String, JSONObject>(
+			MAX_ENTRIES, DEFAULT_TTL, TimeUnit.SECONDS);
+
+	private static final KanboardCache<String, JSONArray> COLUMNS = new KanboardCache<String, JSONArray>(
+			MAX_ENTRIES, DEFAULT_TTL, TimeUnit.SECONDS);
+
+	private KanboardMetadataCache() {
+	}
+
+	static void setTtl(int ttl) {
+		PROJECTS.setTtl(ttl, TimeUnit.SECONDS);
+		COLUMNS.setTtl(ttl, TimeUnit.SECONDS);
+	}
+
+	private static String getKey(JSONRPC2Session session, Object id) {
+		return session.getURL() + "|" + id;
+	}
+
+	public static JSONObject getProjectByIdentifier(JSONRPC2Session session, PrintStream logger,
+			String projectIdentifier, boolean debugMode) throws JSONRPC2SessionException, AbortException {
+		String key = getKey(session, projectIdentifier);
+		JSONObject jsonProject = PROJECTS.get(key);
+		if (jsonProject == null) {
+			jsonProject = Kanboard.getProjectByIdentifier(session, logger, projectIdentifier, debugMode);
+			if (jsonProject != null) {
+				PROJECTS.put(key, copy(jsonProject));
+			}
+			return jsonProject;
+		}
+		return copy(jsonProject);
+	}
+
+	public static JSONArray getProjectColumns(JSONRPC2Session session, PrintStream logger, Object projectId,
+			boolean debugMode) throws JSONRPC2SessionException, AbortException {
+		JSONArray projectColumns = getCachedProjectColumns(session, projectId);
+		if (projectColumns == null) {
+			projectColumns = Kanboard.getProjectColumns(session, logger, projectId, debugMode);
+			putProjectColumns(session, projectId, projectColumns);
+		}
+		return projectColumns;
+	}
+
+	/**
+	 * @return the cached project columns or null if they need to be fetched
+	 */
+	public static JSONArray getCachedProjectColumns(JSONRPC2Session session, Object projectId) {
+		JSONArray projectColumns = COLUMNS.get(getKey(session, projectId));
+		return (projectColumns == null) ? null : copy(projectColumns);
+	}
+
+	public static void putProjectColumns(JSONRPC2Session session, Object projectId, JSONArray projectColumns) {
+		if (projectColumns != null) {
+			COLUMNS.put(getKey(session, projectId), copy(projectColumns));
+		}
+	}
+
+	/**
+	 * Drops the cached project columns, to be called when a column lookup
+	 * misses because the board layout has changed.
+	 */
+	public static void invalidateProjectColumns(JSONRPC2Session session, Object projectId) {
+		COLUMNS.invalidate(getKey(session, projectId));
+	}
+
+	/**
+	 * @return a deep copy of the given JSON object, nested objects and arrays
+	 *         being copied too
+	 */
+	static JSONObject copy(Map<String, Object> json) {
+		JSONObject copy = new JSONObject();
+		for (Map.Entry<String, Object> entry : json.entrySet()) {
+			copy.put(entry.getKey(), copyValue(entry.getValue()));
+		}
+		return copy;
+	}
+
+	/**
+	 * @return a deep copy of the given JSON array, nested objects and arrays
+	 *         being copied too
+	 */
+	static JSONArray copy(List<Object> json) {
+		JSONArray copy = new JSONArray();
+		for (Object value : json) {
+			copy.add(copyValue(value));
+		}
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object copyValue(Object value) {
+		if (value instanceof Map) {
+			return copy((Map<String, Object>) value);
+		} else if (value instanceof List) {
+			return copy((List<Object>) value);
+		}
+		return value;
+	}
+
+	public static long getHits() {
+		return PROJECTS.getHits() + COLUMNS.getHits();
+	}
+
+	public static long getMisses() {
+		return PROJECTS.getMisses() + COLUMNS.getMisses();
+	}
+
+}
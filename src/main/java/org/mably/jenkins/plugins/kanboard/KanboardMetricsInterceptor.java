@@ -0,0 +1,180 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.Extension;
+
+/**
+ * Records per API method call counts, error counts, exchanged message sizes
+ * and latency histograms. Being the outermost interceptor, latencies include
+ * the time spent in retries and in the rate limiter queue.
+ */
+@Extension(ordinal = 100)
+public class KanboardMetricsInterceptor extends KanboardInterceptor {
+
+	/** Upper bounds in milliseconds of the latency histogram buckets. */
+	static final long[] LATENCY_BOUNDS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+	private static final ConcurrentMap<String, MethodMetrics> METRICS = //
+			new ConcurrentSkipListMap<String, MethodMetrics>();
+
+	/**
+	 * Metrics of a single API method.
+	 */
+	public static final class MethodMetrics {
+
+		private final String method;
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong bytesOut = new AtomicLong();
+		private final AtomicLong bytesIn = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLongArray histogram = new AtomicLongArray(LATENCY_BOUNDS.length + 1);
+
+		private MethodMetrics(String method) {
+			this.method = method;
+		}
+
+		private void record(long nanos, long requestSize, long responseSize, boolean error) {
+			calls.incrementAndGet();
+			if (error) {
+				errors.incrementAndGet();
+			}
+			bytesOut.addAndGet(requestSize);
+			bytesIn.addAndGet(responseSize);
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while ((nanos > max) && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+			long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+			int bucket = 0;
+			while ((bucket < LATENCY_BOUNDS.length) && (millis > LATENCY_BOUNDS[bucket])) {
+				bucket++;
+			}
+			histogram.incrementAndGet(bucket);
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public long getCalls() {
+			return calls.get();
+		}
+
+		public long getErrors() {
+			return errors.get();
+		}
+
+		public long getBytesOut() {
+			return bytesOut.get();
+		}
+
+		public long getBytesIn() {
+			return bytesIn.get();
+		}
+
+		/**
+		 * @return mean latency in milliseconds
+		 */
+		public long getMeanLatency() {
+			long count = calls.get();
+			return (count == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / count);
+		}
+
+		/**
+		 * @return max latency in milliseconds
+		 */
+		public long getMaxLatency() {
+			return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+		}
+
+		/**
+		 * @return call counts of each latency bucket, the last one counting
+		 *         calls slower than the last bound
+		 */
+		public List<Long> getHistogram() {
+			List<Long> counts = new ArrayList<Long>(histogram.length());
+			for (int i = 0; i < histogram.length(); i++) {
+				counts.add(histogram.get(i));
+			}
+			return counts;
+		}
+
+	}
+
+	@Override
+	public JSONRPC2Response intercept(KanboardCall call, Chain chain) throws JSONRPC2SessionException {
+		long start = System.nanoTime();
+		JSONRPC2Response response = null;
+		try {
+			response = chain.proceed();
+			return response;
+		} finally {
+			long nanos = System.nanoTime() - start;
+			if (call.isBatch()) {
+				// Each batched call is recorded with the latency of the whole
+				// batch, but with the size of its own messages
+				List<JSONRPC2Request> requests = call.getRequests();
+				List<JSONRPC2Response> responses = call.getResponses();
+				for (int i = 0; i < requests.size(); i++) {
+					JSONRPC2Response batchedResponse = (responses == null) ? null : responses.get(i);
+					getMetrics(requests.get(i).getMethod()).record(nanos, call.getRequestSize(i),
+							call.getResponseSize(i), (batchedResponse == null) || !batchedResponse.indicatesSuccess());
+				}
+			} else {
+				getMetrics(call.getMethod()).record(nanos, call.getRequestSize(), call.getResponseSize(),
+						(response == null) || !response.indicatesSuccess());
+			}
+		}
+	}
+
+	private static MethodMetrics getMetrics(String method) {
+		MethodMetrics metrics = METRICS.get(method);
+		if (metrics == null) {
+			MethodMetrics newMetrics = new MethodMetrics(method);
+			metrics = METRICS.putIfAbsent(method, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * @return metrics of all the methods called so far, sorted by method name
+	 */
+	public static List<MethodMetrics> getAllMetrics() {
+		return Collections.unmodifiableList(new ArrayList<MethodMetrics>(METRICS.values()));
+	}
+
+	/**
+	 * @return latency histogram bucket labels
+	 */
+	public static List<String> getLatencyBuckets() {
+		List<String> labels = new ArrayList<String>(LATENCY_BOUNDS.length + 1);
+		for (long bound : LATENCY_BOUNDS) {
+			labels.add("<= " + bound);
+		}
+		labels.add("> " + LATENCY_BOUNDS[LATENCY_BOUNDS.length - 1]);
+		return labels;
+	}
+
+	public static void reset() {
+		METRICS.clear();
+	}
+
+}
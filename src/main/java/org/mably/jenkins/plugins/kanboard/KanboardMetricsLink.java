@@ -0,0 +1,55 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+
+/**
+ * Jenkins management page showing the Kanboard API calls metrics.
+ */
+@Extension
+public class KanboardMetricsLink extends ManagementLink {
+
+	@Override
+	public String getIconFileName() {
+		return "graph.png";
+	}
+
+	@Override
+	public String getUrlName() {
+		return "kanboard-metrics";
+	}
+
+	@Override
+	public String getDisplayName() {
+		return Messages.metrics_title();
+	}
+
+	@Override
+	public String getDescription() {
+		return Messages.metrics_description();
+	}
+
+	public List<KanboardMetricsInterceptor.MethodMetrics> getMetrics() {
+		return KanboardMetricsInterceptor.getAllMetrics();
+	}
+
+	public List<String> getLatencyBuckets() {
+		return KanboardMetricsInterceptor.getLatencyBuckets();
+	}
+
+	@RequirePOST
+	public HttpResponse doReset() throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		KanboardMetricsInterceptor.reset();
+		return HttpResponses.redirectToDot();
+	}
+
+}
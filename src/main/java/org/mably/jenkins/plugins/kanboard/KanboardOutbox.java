@@ -0,0 +1,806 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.ArrayUtils;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.FilePath;
+import hudson.Util;
+import jenkins.model.Jenkins;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+/**
+ * Durable journal of the task publications which couldn't be sent because
+ * Kanboard was unreachable. Publications are appended to a file in the Jenkins
+ * home directory, concurrent appends sharing a single fsync, and replayed in
+ * order with an exponential backoff once the endpoint is reachable again.
+ * Publications superseded by a later publication of the same task are merged
+ * into it and dropped during replay.
+ */
+public final class KanboardOutbox {
+
+	private static final Logger LOGGER = Logger.getLogger(KanboardOutbox.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String FILE_NAME = "kanboard-outbox.journal";
+	private static final String ATTACHMENTS_DIR_NAME = "kanboard-outbox";
+
+	static final boolean DEFAULT_ENABLED = true;
+
+	private static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(5);
+	private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+	/** Journal records beyond which the journal is rewritten with the pending entries only. */
+	private static final int COMPACTION_THRESHOLD = 1000;
+
+	/** Period over which the drain rate is measured. */
+	private static final long DRAIN_RATE_PERIOD = TimeUnit.MINUTES.toMillis(5);
+
+	private static final String ADD = "add";
+	private static final String DONE = "done";
+
+	private static volatile boolean enabled = DEFAULT_ENABLED;
+
+	private static KanboardOutbox instance;
+
+	/**
+	 * A journaled task publication.
+	 */
+	public static final class Entry {
+
+		private final long id;
+		private final long time;
+		private final String endpoint;
+		private final boolean syncTaskFields;
+		private final String attachments;
+		private final KanboardTaskPublisher.TaskValues values;
+
+		private int attempts;
+		private String lastError;
+		/** True while the publication is being journaled. */
+		private boolean reserved;
+
+		Entry(long id, long time, String endpoint, boolean syncTaskFields, String attachments,
+				KanboardTaskPublisher.TaskValues values) {
+			this.id = id;
+			this.time = time;
+			this.endpoint = endpoint;
+			this.syncTaskFields = syncTaskFields;
+			this.attachments = attachments;
+			this.values = values;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public Date getDate() {
+			return new Date(time);
+		}
+
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		public String getProjectIdentifier() {
+			return values.projectIdentifier;
+		}
+
+		public String getTaskReference() {
+			return values.taskReference;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+		public String getLastError() {
+			return lastError;
+		}
+
+		String getKey() {
+			return values.getKey(endpoint);
+		}
+
+		KanboardTaskPublisher.TaskValues getValues() {
+			return values;
+		}
+
+		/**
+		 * @return the directory holding the copies of the attachments, null
+		 *         if they weren't copied
+		 */
+		File getAttachmentsDir() {
+			return (attachments == null) ? null : new File(attachments);
+		}
+	}
+
+	private final File file;
+	private final File attachmentsDir;
+
+	private final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+	private long lastId;
+	private int records;
+
+	private Writer writer;
+	private FileOutputStream out;
+	private long written;
+	private final Object syncLock = new Object();
+	private long synced;
+	/** Sequence number up to which the last compaction made the records durable. */
+	private long compacted;
+
+	private long nextAttempt;
+	private long backoff;
+	private final LinkedList<Long> drained = new LinkedList<Long>();
+	private long replayedCount;
+	private long coalescedCount;
+	private long droppedCount;
+
+	private KanboardOutbox(File file) {
+		this.file = file;
+		this.attachmentsDir = (file == null) ? null : new File(file.getParentFile(), ATTACHMENTS_DIR_NAME);
+	}
+
+	public static synchronized KanboardOutbox get() {
+		if (instance == null) {
+			Jenkins jenkins = Jenkins.getInstance();
+			instance = open((jenkins == null) ? null : new File(jenkins.getRootDir(), FILE_NAME));
+		}
+		return instance;
+	}
+
+	/**
+	 * @param file
+	 *            the journal, null if publications aren't to be journaled
+	 * @return the outbox holding the publications still pending in the
+	 *         journal
+	 */
+	static KanboardOutbox open(File file) {
+		KanboardOutbox outbox = new KanboardOutbox(file);
+		outbox.load();
+		return outbox;
+	}
+
+	/**
+	 * @param value
+	 *            true if the publications failing because Kanboard is
+	 *            unreachable are journaled to be replayed
+	 */
+	static void configure(boolean value) {
+		enabled = value;
+	}
+
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return true if the failure is due to Kanboard being unreachable, and
+	 *         the publication can be replayed later
+	 */
+	static boolean isTransient(JSONRPC2SessionException e) {
+		if ((e.getExceptionType() != JSONRPC2SessionException.NETWORK_EXCEPTION) || isInterrupted(e)) {
+			return false;
+		}
+		Throwable cause = e.getCause();
+		return !(cause instanceof KanboardTransport.HttpStatusException)
+				|| ((KanboardTransport.HttpStatusException) cause).isTransient();
+	}
+
+	/**
+	 * @return true if the request was interrupted, while waiting for a request
+	 *         slot or before a retry, rather than failed
+	 */
+	static boolean isInterrupted(JSONRPC2SessionException e) {
+		if (Thread.currentThread().isInterrupted()) {
+			return true;
+		}
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if (cause instanceof InterruptedException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return an interruption to rethrow in place of the given failure, the
+	 *         interrupt flag of the current thread being cleared
+	 */
+	static InterruptedException toInterruptedException(JSONRPC2SessionException e) {
+		Thread.interrupted();
+		InterruptedException interrupted = new InterruptedException(e.getMessage());
+		interrupted.initCause(e);
+		return interrupted;
+	}
+
+	/**
+	 * @return true if earlier publications of the task are still pending, the
+	 *         new one having to be journaled after them
+	 */
+	synchronized boolean hasPending(String endpoint, KanboardTaskPublisher.TaskValues values) {
+		String key = values.getKey(endpoint);
+		for (Entry entry : entries.values()) {
+			if (entry.getKey().equals(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Journals a publication, which is durable once this method returns. The
+	 * attachments are copied along with the journal, the workspace being
+	 * possibly reused or wiped by the time the publication is replayed.
+	 *
+	 * @param workspace
+	 *            the workspace holding the attachments, may be null
+	 */
+	void add(String endpoint, boolean syncTaskFields, FilePath workspace, KanboardTaskPublisher.TaskValues values,
+			PrintStream logger) throws IOException, InterruptedException {
+
+		KanboardTaskPublisher.TaskValues journaled = values.copy();
+		boolean staged = ArrayUtils.isNotEmpty(journaled.taskAttachments) && (workspace != null)
+				&& (attachmentsDir != null);
+
+		// Reserved before the attachments are staged, so that publications
+		// are replayed in the order they were added, and so that later
+		// publications of the task are journaled behind this one
+		Entry entry;
+		synchronized (this) {
+			long id = ++lastId;
+			entry = new Entry(id, System.currentTimeMillis(), endpoint, syncTaskFields,
+					staged ? new File(attachmentsDir, String.valueOf(id)).getPath() : null, journaled);
+			entry.reserved = true;
+			entries.put(entry.id, entry);
+		}
+
+		long seq;
+		try {
+			if (staged) {
+				KanboardGlobalConfiguration config = KanboardGlobalConfiguration.get();
+				journaled.taskAttachments = KanboardAttachments.stage(workspace, journaled.taskAttachments,
+						new FilePath(entry.getAttachmentsDir()), (config == null) ? 0 : config.getAttachmentMaxSize(),
+						logger);
+			} else if (ArrayUtils.isNotEmpty(journaled.taskAttachments)) {
+				logger.println(Messages.outbox_attachments_skipped(journaled.taskReference));
+				journaled.taskAttachments = null;
+			}
+			synchronized (this) {
+				seq = append(toRecord(entry));
+				// Only replayed once journaled
+				entry.reserved = false;
+			}
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			synchronized (this) {
+				entries.remove(entry.id);
+			}
+			deleteAttachments(entry.id);
+			throw e;
+		}
+		sync(seq);
+	}
+
+	public synchronized List<Entry> getEntries() {
+		List<Entry> journaled = new ArrayList<Entry>(entries.size());
+		for (Entry entry : entries.values()) {
+			if (!entry.reserved) {
+				journaled.add(entry);
+			}
+		}
+		return Collections.unmodifiableList(journaled);
+	}
+
+	/**
+	 * @return number of pending publications
+	 */
+	public synchronized int getDepth() {
+		return getEntries().size();
+	}
+
+	/**
+	 * @return publications replayed or dropped per minute, over the last
+	 *         minutes
+	 */
+	public synchronized double getDrainRate() {
+		pruneDrained(System.currentTimeMillis());
+		return drained.size() * (double) TimeUnit.MINUTES.toMillis(1) / DRAIN_RATE_PERIOD;
+	}
+
+	public synchronized long getReplayedCount() {
+		return replayedCount;
+	}
+
+	public synchronized long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * @return date of the next replay attempt, null if there is no pending
+	 *         backoff
+	 */
+	public synchronized Date getNextAttemptDate() {
+		return (nextAttempt > System.currentTimeMillis()) ? new Date(nextAttempt) : null;
+	}
+
+	/**
+	 * Cancels the current backoff, the next replay being attempted at once.
+	 */
+	public synchronized void retryNow() {
+		nextAttempt = 0;
+	}
+
+	/**
+	 * Removes a publication from the journal without replaying it.
+	 */
+	public void discard(long id) throws IOException {
+		long seq;
+		synchronized (this) {
+			Entry entry = entries.get(id);
+			if ((entry == null) || entry.reserved) {
+				return;
+			}
+			entries.remove(id);
+			droppedCount++;
+			seq = complete(id);
+		}
+		sync(seq);
+		deleteAttachments(id);
+	}
+
+	/**
+	 * Replays the pending publications in order, until the journal is empty
+	 * or Kanboard is unreachable.
+	 */
+	void replay(PrintStream logger) throws InterruptedException {
+
+		while (true) {
+
+			Entry entry;
+			synchronized (this) {
+				if (System.currentTimeMillis() < nextAttempt) {
+					return;
+				}
+				entry = nextEntry();
+			}
+			if (entry == null) {
+				return;
+			}
+
+			// Replayed with the current endpoint credentials, a publication
+			// journaled for another endpoint is dropped
+			KanboardGlobalConfiguration config = KanboardGlobalConfiguration.get();
+			if ((config == null) || !entry.endpoint.equals(config.getEndpoint())) {
+				logger.println(Messages.outbox_dropped(entry.getTaskReference(),
+						Messages.outbox_endpoint_changed(entry.endpoint)));
+				done(entry, false);
+				continue;
+			}
+
+			try {
+				if (KanboardCircuitBreaker.get(new URL(entry.endpoint))
+						.getState() == KanboardCircuitBreaker.State.OPEN) {
+					delay(entry, Messages.outbox_endpoint_unavailable(entry.endpoint));
+					return;
+				}
+				logger.println(Messages.outbox_replaying(entry.getTaskReference(), entry.getProjectIdentifier(),
+						entry.getDate()));
+				publish(entry, logger);
+				done(entry, true);
+			} catch (JSONRPC2SessionException e) {
+				if (isInterrupted(e)) {
+					// Left in the journal for the next replay
+					journalRemaining(entry);
+					throw toInterruptedException(e);
+				}
+				if (isTransient(e)) {
+					logger.println(e.getMessage());
+					journalRemaining(entry);
+					delay(entry, e.getMessage());
+					return;
+				}
+				logger.println(Messages.outbox_dropped(entry.getTaskReference(), e.getMessage()));
+				done(entry, false);
+			} catch (IOException | RuntimeException e) {
+				logger.println(Messages.outbox_dropped(entry.getTaskReference(), e.getMessage()));
+				done(entry, false);
+			}
+		}
+	}
+
+	private void publish(Entry entry, PrintStream logger)
+			throws JSONRPC2SessionException, IOException, InterruptedException {
+		KanboardTaskPublisher publisher = new KanboardTaskPublisher(entry.getProjectIdentifier(),
+				entry.getTaskReference());
+		publisher.setSyncTaskFields(entry.syncTaskFields);
+		File entryAttachmentsDir = entry.getAttachmentsDir();
+		KanboardTaskPublisher.TaskValues values = entry.values;
+		if (ArrayUtils.isNotEmpty(values.taskAttachments)
+				&& ((entryAttachmentsDir == null) || !entryAttachmentsDir.isDirectory())) {
+			// Journaled before the attachments were copied along
+			logger.println(Messages.outbox_attachments_skipped(entry.getTaskReference()));
+			values.taskAttachments = null;
+		}
+		publisher.publishTask(values, (entryAttachmentsDir == null) ? null : new FilePath(entryAttachmentsDir),
+				logger, null);
+	}
+
+	/**
+	 * @return the oldest pending publication, once the ones superseded by a
+	 *         later publication of the same task have been merged into it and
+	 *         dropped
+	 */
+	synchronized Entry nextEntry() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.reserved) {
+				return null; // Replayed once journaled, before the later ones
+			}
+			Entry later = getLaterEntry(entry);
+			if ((later == null) || later.reserved || !later.values.canSupersede(entry.values)) {
+				return entry;
+			}
+			later.values.mergeEarlier(entry.values);
+			iterator.remove();
+			coalescedCount++;
+			// The merged publication is journaled before the dropped one is
+			// completed, both records being synced together
+			try {
+				append(toRecord(later));
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+			}
+			completeQuietly(entry.id);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the next pending publication of the same task, null if there is
+	 *         none
+	 */
+	private Entry getLaterEntry(Entry entry) {
+		for (Entry other : entries.values()) {
+			if ((other.id > entry.id) && other.getKey().equals(entry.getKey())) {
+				return other;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Journals the parts of a publication which remain to be applied after a
+	 * failed replay in place of its previous record, so that the applied parts
+	 * aren't replayed again.
+	 */
+	private void journalRemaining(Entry entry) {
+		long seq;
+		synchronized (this) {
+			if (!entries.containsKey(entry.id)) {
+				return; // Discarded in the meantime
+			}
+			try {
+				seq = append(toRecord(entry));
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+				return;
+			}
+		}
+		try {
+			sync(seq);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to sync " + file, e);
+		}
+	}
+
+	private synchronized void delay(Entry entry, String error) {
+		entry.attempts++;
+		entry.lastError = error;
+		backoff = (backoff == 0) ? MIN_BACKOFF : Math.min(backoff * 2, MAX_BACKOFF);
+		nextAttempt = System.currentTimeMillis() + backoff;
+	}
+
+	private void done(Entry entry, boolean replayed) {
+		long seq;
+		synchronized (this) {
+			entries.remove(entry.id);
+			if (replayed) {
+				replayedCount++;
+			} else {
+				droppedCount++;
+			}
+			backoff = 0;
+			long now = System.currentTimeMillis();
+			drained.add(now);
+			pruneDrained(now);
+			seq = completeQuietly(entry.id);
+		}
+		try {
+			sync(seq);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to sync " + file, e);
+		}
+		deleteAttachments(entry.id);
+	}
+
+	private void deleteAttachments(long id) {
+		if (attachmentsDir == null) {
+			return;
+		}
+		File entryAttachmentsDir = new File(attachmentsDir, String.valueOf(id));
+		if (!entryAttachmentsDir.exists()) {
+			return;
+		}
+		try {
+			Util.deleteRecursive(entryAttachmentsDir);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to delete " + entryAttachmentsDir, e);
+		}
+	}
+
+	private void pruneDrained(long now) {
+		while (!drained.isEmpty() && (drained.getFirst() < now - DRAIN_RATE_PERIOD)) {
+			drained.removeFirst();
+		}
+	}
+
+	private long completeQuietly(long id) {
+		try {
+			return complete(id);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Records the completion of a publication, compacting the journal if it
+	 * holds mostly completed publications.
+	 *
+	 * @return sequence number of the record
+	 */
+	private long complete(long id) throws IOException {
+		if (entries.isEmpty() || ((records > COMPACTION_THRESHOLD) && (records > 2 * entries.size()))) {
+			compact();
+			return written;
+		}
+		JSONObject record = new JSONObject();
+		record.put("type", DONE);
+		record.put("id", id);
+		return append(record);
+	}
+
+	/**
+	 * @return sequence number of the record
+	 */
+	private long append(JSONObject record) throws IOException {
+		if (file == null) {
+			return written;
+		}
+		if (writer == null) {
+			out = new FileOutputStream(file, true);
+			writer = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+		}
+		writer.write(record.toJSONString());
+		writer.write('\n');
+		records++;
+		return ++written;
+	}
+
+	/**
+	 * Waits until the record of the given sequence number is on disk. Records
+	 * appended while a sync is in progress are synced together.
+	 */
+	private void sync(long seq) throws IOException {
+		synchronized (syncLock) {
+			if (synced >= seq) {
+				return;
+			}
+			long target;
+			FileOutputStream syncedOut;
+			synchronized (this) {
+				if (writer == null) {
+					return;
+				}
+				writer.flush();
+				target = written;
+				syncedOut = out;
+			}
+			try {
+				syncedOut.getChannel().force(false);
+			} catch (ClosedChannelException e) {
+				synchronized (this) {
+					// Closed by a compaction, which rewrote the pending
+					// publications durably in the meantime
+					if (compacted < target) {
+						throw e;
+					}
+				}
+			}
+			synced = target;
+		}
+	}
+
+	/**
+	 * Rewrites the journal with the pending publications only.
+	 */
+	private void compact() throws IOException {
+		if (file == null) {
+			return;
+		}
+		if (writer != null) {
+			writer.close();
+			writer = null;
+			out = null;
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		int count = 0;
+		FileOutputStream tmpOut = new FileOutputStream(tmp);
+		try {
+			Writer tmpWriter = new BufferedWriter(new OutputStreamWriter(tmpOut, UTF8));
+			for (Entry entry : entries.values()) {
+				if (entry.reserved) {
+					continue; // Appended once its attachments are staged
+				}
+				tmpWriter.write(toRecord(entry).toJSONString());
+				tmpWriter.write('\n');
+				count++;
+			}
+			tmpWriter.flush();
+			tmpOut.getChannel().force(false);
+		} finally {
+			tmpOut.close();
+		}
+		if (!tmp.renameTo(file)) {
+			// Windows doesn't replace existing files
+			if (!file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("Failed to replace " + file);
+			}
+		}
+		records = count;
+		compacted = ++written;
+	}
+
+	private void load() {
+		if ((file == null) || !file.exists()) {
+			return;
+		}
+		try {
+			boolean truncated = false;
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					records++;
+					Object parsed = JSONValue.parse(line);
+					if (!(parsed instanceof JSONObject)) {
+						truncated = true; // Truncated by a crash
+						continue;
+					}
+					JSONObject record = (JSONObject) parsed;
+					long id = ((Number) record.get("id")).longValue();
+					lastId = Math.max(lastId, id);
+					if (ADD.equals(record.get("type"))) {
+						// A publication journaled again keeps its position
+						Entry entry = fromRecord(record);
+						entries.put(entry.id, entry);
+					} else if (DONE.equals(record.get("type"))) {
+						entries.remove(id);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			if (truncated) {
+				// The next record would otherwise be appended to the
+				// truncated one, and lost along with it
+				compact();
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+		}
+	}
+
+	private static JSONObject toRecord(Entry entry) {
+		KanboardTaskPublisher.TaskValues values = entry.values;
+		JSONObject record = new JSONObject();
+		record.put("type", ADD);
+		record.put("id", entry.id);
+		record.put("time", entry.time);
+		record.put("endpoint", entry.endpoint);
+		record.put("syncTaskFields", entry.syncTaskFields);
+		record.put("attachments", entry.attachments);
+		record.put("projectIdentifier", values.projectIdentifier);
+		record.put("taskReference", values.taskReference);
+		record.put("taskTitle", values.taskTitle);
+		record.put("taskDescription", values.taskDescription);
+		record.put("taskColumn", values.taskColumn);
+		record.put("taskOwner", values.taskOwner);
+		record.put("taskCreator", values.taskCreator);
+		record.put("taskSwimlane", values.taskSwimlane);
+		record.put("taskColor", values.taskColor);
+		record.put("taskComment", values.taskComment);
+		record.put("taskSubtaskTitle", values.taskSubtaskTitle);
+		record.put("taskTags", toArray(values.taskTags));
+		record.put("taskAttachments", toArray(values.taskAttachments));
+		record.put("taskExternalLinks", toArray(values.taskExternalLinks));
+		return record;
+	}
+
+	private static Entry fromRecord(JSONObject record) {
+		KanboardTaskPublisher.TaskValues values = new KanboardTaskPublisher.TaskValues();
+		values.projectIdentifier = (String) record.get("projectIdentifier");
+		values.taskReference = (String) record.get("taskReference");
+		values.taskTitle = (String) record.get("taskTitle");
+		values.taskDescription = (String) record.get("taskDescription");
+		values.taskColumn = (String) record.get("taskColumn");
+		values.taskOwner = (String) record.get("taskOwner");
+		values.taskCreator = (String) record.get("taskCreator");
+		values.taskSwimlane = (String) record.get("taskSwimlane");
+		values.taskColor = (String) record.get("taskColor");
+		values.taskComment = (String) record.get("taskComment");
+		values.taskSubtaskTitle = (String) record.get("taskSubtaskTitle");
+		values.taskTags = fromArray(record.get("taskTags"));
+		values.taskAttachments = fromArray(record.get("taskAttachments"));
+		values.taskExternalLinks = fromArray(record.get("taskExternalLinks"));
+		return new Entry(((Number) record.get("id")).longValue(), ((Number) record.get("time")).longValue(),
+				(String) record.get("endpoint"), Boolean.TRUE.equals(record.get("syncTaskFields")),
+				(String) record.get("attachments"), values);
+	}
+
+	private static JSONArray toArray(String[] values) {
+		if (values == null) {
+			return null;
+		}
+		JSONArray array = new JSONArray();
+		Collections.addAll(array, (Object[]) values);
+		return array;
+	}
+
+	private static String[] fromArray(Object value) {
+		if (!(value instanceof JSONArray)) {
+			return null;
+		}
+		JSONArray array = (JSONArray) value;
+		String[] values = new String[array.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = String.valueOf(array.get(i));
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+
+/**
+ * Jenkins management page showing the task publications waiting in the
+ * Kanboard outbox.
+ */
+@Extension
+public class KanboardOutboxLink extends ManagementLink {
+
+	@Override
+	public String getIconFileName() {
+		return "hourglass.png";
+	}
+
+	@Override
+	public String getUrlName() {
+		return "kanboard-outbox";
+	}
+
+	@Override
+	public String getDisplayName() {
+		return Messages.outbox_title();
+	}
+
+	@Override
+	public String getDescription() {
+		return Messages.outbox_description();
+	}
+
+	public boolean isEnabled() {
+		return KanboardOutbox.isEnabled();
+	}
+
+	public int getDepth() {
+		return KanboardOutbox.get().getDepth();
+	}
+
+	/**
+	 * @return publications drained per minute, formatted
+	 */
+	public String getDrainRate() {
+		return String.format("%.1f", KanboardOutbox.get().getDrainRate());
+	}
+
+	public long getReplayedCount() {
+		return KanboardOutbox.get().getReplayedCount();
+	}
+
+	public long getCoalescedCount() {
+		return KanboardOutbox.get().getCoalescedCount();
+	}
+
+	public long getDroppedCount() {
+		return KanboardOutbox.get().getDroppedCount();
+	}
+
+	public Date getNextAttemptDate() {
+		return KanboardOutbox.get().getNextAttemptDate();
+	}
+
+	public List<KanboardOutbox.Entry> getEntries() {
+		return KanboardOutbox.get().getEntries();
+	}
+
+	@RequirePOST
+	public HttpResponse doRetry() throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		KanboardOutbox.get().retryNow();
+		return HttpResponses.redirectToDot();
+	}
+
+	@RequirePOST
+	public HttpResponse doDiscard(@QueryParameter long id) throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		KanboardOutbox.get().discard(id);
+		return HttpResponses.redirectToDot();
+	}
+
+}
@@ -0,0 +1,37 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+/**
+ * Periodically replays the task publications journaled in the
+ * {@link KanboardOutbox}, the outbox itself deciding whether Kanboard should
+ * be tried again.
+ */
+@Extension
+public class KanboardOutboxReplayer extends AsyncPeriodicWork {
+
+	private static final long RECURRENCE_PERIOD = TimeUnit.SECONDS.toMillis(5);
+
+	public KanboardOutboxReplayer() {
+		super("Kanboard outbox replay");
+	}
+
+	@Override
+	public long getRecurrencePeriod() {
+		return RECURRENCE_PERIOD;
+	}
+
+	@Override
+	protected void execute(TaskListener listener) throws IOException, InterruptedException {
+		KanboardOutbox outbox = KanboardOutbox.get();
+		if (outbox.getDepth() > 0) {
+			outbox.replay(listener.getLogger());
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+
+/**
+ * Runs tasks a few at a time on the shared executor. Each task logs to its own
+ * buffer, buffers being copied to the build log in the order the tasks were
+ * added once they are done, so that the log reads the same whatever the
+ * completion order. A task failing with an I/O error is skipped without
+ * preventing the other ones from being run.
+ *
+ * @param <T>
+ *            type of the task results
+ */
+final class KanboardParallelStage<T> {
+
+	/**
+	 * A single task of the stage.
+	 */
+	abstract static class Task<T> {
+
+		/**
+		 * @param logger
+		 *            buffer of the task log messages
+		 * @return the task result, may be null
+		 * @throws IOException
+		 *             if the task is to be skipped, the message being logged
+		 */
+		abstract T run(PrintStream logger) throws JSONRPC2SessionException, IOException, InterruptedException;
+
+	}
+
+	private final class Slot {
+
+		private final Task<T> task;
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private T result;
+		private Exception failure;
+
+		Slot(Task<T> task) {
+			this.task = task;
+		}
+
+		void run() {
+			PrintStream slotLogger = new PrintStream(buffer);
+			try {
+				result = task.run(slotLogger);
+			} catch (IOException e) {
+				// Same as the sequential tasks, the item is skipped
+				slotLogger.println(e.getMessage());
+			} catch (JSONRPC2SessionException | InterruptedException | RuntimeException e) {
+				failure = e;
+			} finally {
+				slotLogger.flush();
+				done.countDown();
+			}
+		}
+	}
+
+	private final PrintStream logger;
+	private final int parallelism;
+	private final List<Slot> slots = new ArrayList<Slot>();
+
+	/**
+	 * @param logger
+	 *            the build logger
+	 * @param parallelism
+	 *            maximum number of tasks run at the same time, 1 to run them
+	 *            one after the other
+	 */
+	KanboardParallelStage(PrintStream logger, int parallelism) {
+		this.logger = logger;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the given parallelism, never more than the number of requests
+	 *         allowed in flight per endpoint
+	 */
+	static int limit(int parallelism) {
+		int maxConcurrent = KanboardRateLimiter.getMaxConcurrentRequests();
+		return (maxConcurrent > 0) ? Math.min(parallelism, maxConcurrent) : parallelism;
+	}
+
+	void add(Task<T> task) {
+		slots.add(new Slot(task));
+	}
+
+	/**
+	 * @return number of tasks run at the same time by {@link #run()}
+	 */
+	int getWidth() {
+		return Math.min(parallelism, slots.size());
+	}
+
+	/**
+	 * Runs all the tasks added so far, writing their log messages to the build
+	 * log in order.
+	 *
+	 * @return the task results in the order the tasks were added, null for the
+	 *         skipped tasks
+	 * @throws JSONRPC2SessionException
+	 *             the first non I/O failure in task order, once all the tasks
+	 *             are done
+	 */
+	List<T> run() throws JSONRPC2SessionException, AbortException, InterruptedException {
+
+		int width = getWidth();
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+
+		if (width <= 1) {
+			for (Slot slot : slots) {
+				slot.run();
+			}
+		} else {
+			// Workers take the next pending task until there is none left
+			final AtomicInteger next = new AtomicInteger();
+			for (int i = 0; i < width; i++) {
+				workers.add(KanboardAsyncClient.getExecutor().submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						int index;
+						while ((index = next.getAndIncrement()) < slots.size()) {
+							slots.get(index).run();
+						}
+						return null;
+					}
+				}));
+			}
+		}
+
+		List<T> results = new ArrayList<T>(slots.size());
+		Exception failure = null;
+		try {
+			for (Slot slot : slots) {
+				slot.done.await();
+				slot.buffer.writeTo(logger);
+				results.add(slot.result);
+				if ((failure == null) && (slot.failure != null)) {
+					failure = slot.failure;
+				}
+			}
+		} catch (IOException e) {
+			throw new AbortException(e.getMessage());
+		} finally {
+			for (Future<?> worker : workers) {
+				worker.cancel(true);
+			}
+		}
+
+		if (failure instanceof JSONRPC2SessionException) {
+			throw (JSONRPC2SessionException) failure;
+		} else if (failure instanceof InterruptedException) {
+			throw (InterruptedException) failure;
+		} else if (failure != null) {
+			throw (RuntimeException) failure;
+		}
+		return results;
+	}
+
+}
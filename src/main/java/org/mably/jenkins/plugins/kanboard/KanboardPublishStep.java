@@ -0,0 +1,301 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+
+/**
+ * Pipeline step creating or updating a Kanboard task, the Pipeline
+ * counterpart of {@link KanboardTaskPublisher}. It runs on the controller
+ * without blocking the Pipeline thread, and only needs a node to upload
+ * attachments. It returns a map holding the task {@code id} and {@code url},
+ * and {@code deferred} which is true if Kanboard was unreachable and the task
+ * will be published from the outbox.
+ */
+public class KanboardPublishStep extends AbstractStepImpl {
+
+	static final String RESULT_ID = "id";
+	static final String RESULT_URL = "url";
+	static final String RESULT_DEFERRED = "deferred";
+
+	private final String projectIdentifier;
+	private final String taskReference;
+
+	private String taskTitle;
+	private String taskColumn;
+	private String taskOwner;
+	private String taskCreator;
+	private String taskDescription;
+	private String taskAttachments;
+	private String taskExternalLinks;
+	private String taskSwimlane;
+	private String taskColor;
+	private String taskTags;
+	private String taskComment;
+	private String taskSubtaskTitle;
+	private boolean syncTaskFields;
+
+	@DataBoundConstructor
+	public KanboardPublishStep(String projectIdentifier, String taskReference) {
+		this.projectIdentifier = projectIdentifier;
+		this.taskReference = taskReference;
+	}
+
+	public String getProjectIdentifier() {
+		return projectIdentifier;
+	}
+
+	public String getTaskReference() {
+		return taskReference;
+	}
+
+	public String getTaskTitle() {
+		return taskTitle;
+	}
+
+	@DataBoundSetter
+	public void setTaskTitle(String taskTitle) {
+		this.taskTitle = taskTitle;
+	}
+
+	public String getTaskColumn() {
+		return taskColumn;
+	}
+
+	@DataBoundSetter
+	public void setTaskColumn(String taskColumn) {
+		this.taskColumn = taskColumn;
+	}
+
+	public String getTaskOwner() {
+		return taskOwner;
+	}
+
+	@DataBoundSetter
+	public void setTaskOwner(String taskOwner) {
+		this.taskOwner = taskOwner;
+	}
+
+	public String getTaskCreator() {
+		return taskCreator;
+	}
+
+	@DataBoundSetter
+	public void setTaskCreator(String taskCreator) {
+		this.taskCreator = taskCreator;
+	}
+
+	public String getTaskDescription() {
+		return taskDescription;
+	}
+
+	@DataBoundSetter
+	public void setTaskDescription(String taskDescription) {
+		this.taskDescription = taskDescription;
+	}
+
+	public String getTaskAttachments() {
+		return taskAttachments;
+	}
+
+	@DataBoundSetter
+	public void setTaskAttachments(String taskAttachments) {
+		this.taskAttachments = taskAttachments;
+	}
+
+	public String getTaskExternalLinks() {
+		return taskExternalLinks;
+	}
+
+	@DataBoundSetter
+	public void setTaskExternalLinks(String taskExternalLinks) {
+		this.taskExternalLinks = taskExternalLinks;
+	}
+
+	public String getTaskSwimlane() {
+		return taskSwimlane;
+	}
+
+	@DataBoundSetter
+	public void setTaskSwimlane(String taskSwimlane) {
+		this.taskSwimlane = taskSwimlane;
+	}
+
+	public String getTaskColor() {
+		return taskColor;
+	}
+
+	@DataBoundSetter
+	public void setTaskColor(String taskColor) {
+		this.taskColor = taskColor;
+	}
+
+	public String getTaskTags() {
+		return taskTags;
+	}
+
+	@DataBoundSetter
+	public void setTaskTags(String taskTags) {
+		this.taskTags = taskTags;
+	}
+
+	public String getTaskComment() {
+		return taskComment;
+	}
+
+	@DataBoundSetter
+	public void setTaskComment(String taskComment) {
+		this.taskComment = taskComment;
+	}
+
+	public String getTaskSubtaskTitle() {
+		return taskSubtaskTitle;
+	}
+
+	@DataBoundSetter
+	public void setTaskSubtaskTitle(String taskSubtaskTitle) {
+		this.taskSubtaskTitle = taskSubtaskTitle;
+	}
+
+	public boolean isSyncTaskFields() {
+		return syncTaskFields;
+	}
+
+	@DataBoundSetter
+	public void setSyncTaskFields(boolean syncTaskFields) {
+		this.syncTaskFields = syncTaskFields;
+	}
+
+	/**
+	 * Expands the environment variables of the step fields, Groovy strings
+	 * being already interpolated.
+	 */
+	KanboardTaskPublisher.TaskValues expandValues(EnvVars env) throws AbortException {
+
+		KanboardTaskPublisher.TaskValues values = new KanboardTaskPublisher.TaskValues();
+
+		values.projectIdentifier = env.expand(this.projectIdentifier);
+		values.taskReference = env.expand(this.taskReference);
+
+		if (StringUtils.isBlank(values.projectIdentifier) || StringUtils.isBlank(values.taskReference)) {
+			throw new AbortException("Valid project identifier and task reference are required.");
+		}
+
+		values.taskTitle = env.expand(this.taskTitle);
+		values.taskDescription = env.expand(this.taskDescription);
+		values.taskColumn = env.expand(this.taskColumn);
+		values.taskOwner = env.expand(this.taskOwner);
+		values.taskCreator = env.expand(this.taskCreator);
+		values.taskSwimlane = env.expand(this.taskSwimlane);
+		values.taskColor = env.expand(this.taskColor);
+		values.taskComment = env.expand(this.taskComment);
+		values.taskSubtaskTitle = env.expand(this.taskSubtaskTitle);
+
+		values.taskTags = Utils.getCSVStringValue(env.expand(this.taskTags));
+
+		values.taskAttachments = Utils.getCSVStringValue(env.expand(this.taskAttachments));
+
+		values.taskExternalLinks = Utils.getCSVStringValue(env.expand(this.taskExternalLinks));
+
+		return values;
+	}
+
+	public static final class Execution extends AbstractSynchronousNonBlockingStepExecution<Map<String, Object>> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Inject
+		private transient KanboardPublishStep step;
+
+		@StepContextParameter
+		private transient TaskListener listener;
+
+		@StepContextParameter
+		private transient EnvVars env;
+
+		@Override
+		protected Map<String, Object> run() throws Exception {
+
+			// Only available within a node block
+			FilePath workspace = getContext().get(FilePath.class);
+
+			KanboardTaskPublisher.TaskValues values = step.expandValues(env);
+
+			KanboardTaskPublisher publisher = new KanboardTaskPublisher(values.projectIdentifier,
+					values.taskReference);
+			publisher.setSyncTaskFields(step.syncTaskFields);
+
+			Map<String, Object> result = new HashMap<String, Object>();
+			try {
+				KanboardTaskPublisher.PublishedTask task = publisher.publishOrDefer(values, workspace,
+						listener.getLogger(), null);
+				result.put(RESULT_DEFERRED, task == null);
+				if (task != null) {
+					result.put(RESULT_ID, task.getId());
+					result.put(RESULT_URL, task.getURL());
+				}
+			} catch (JSONRPC2SessionException e) {
+				throw new AbortException(e.getMessage());
+			}
+			return result;
+		}
+
+		/**
+		 * The step state isn't persisted, it is failed rather than left
+		 * waiting forever when Jenkins restarted while it was running. Task
+		 * updates already deferred to the outbox are still sent.
+		 */
+		@Override
+		public void onResume() {
+			getContext().onFailure(new AbortException(Messages.step_resume_unsupported(DescriptorImpl.FUNCTION_NAME)));
+		}
+	}
+
+	@Extension(optional = true)
+	public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+		static final String FUNCTION_NAME = "kanboardPublish";
+
+		public DescriptorImpl() {
+			super(Execution.class);
+		}
+
+		@Override
+		public String getFunctionName() {
+			return FUNCTION_NAME;
+		}
+
+		@Override
+		public String getDisplayName() {
+			return Messages.kanboard_publish_step();
+		}
+
+		/**
+		 * @return Fills task color selection dropdown list
+		 */
+		public ListBoxModel doFillTaskColorItems() {
+			return Jenkins.getInstance().getDescriptorByType(KanboardTaskPublisher.DescriptorImpl.class)
+					.doFillTaskColorItems();
+		}
+	}
+
+}
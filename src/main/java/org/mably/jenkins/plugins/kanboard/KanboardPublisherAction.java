@@ -0,0 +1,211 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+/**
+ * Build action holding the outcome of a task published in the background,
+ * once the build step is done: status, log and duration of each Kanboard
+ * API request.
+ */
+public class KanboardPublisherAction implements RunAction2, KanboardSession.OperationRecorder {
+
+	private static final Logger LOGGER = Logger.getLogger(KanboardPublisherAction.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public enum Status {
+		/** Waiting for a background worker. */
+		QUEUED,
+		/** Being published. */
+		RUNNING,
+		/** Published. */
+		SUCCESS,
+		/** Kanboard was unreachable, the task will be published from the outbox. */
+		DEFERRED,
+		/** The publication failed, see the log. */
+		FAILURE,
+		/** Jenkins was stopped before the task was published. */
+		ABORTED;
+
+		public boolean isDone() {
+			return (this != QUEUED) && (this != RUNNING);
+		}
+	}
+
+	/**
+	 * A Kanboard API request and its duration.
+	 */
+	public static final class Operation {
+
+		private final String method;
+		private final long duration;
+		private final boolean success;
+
+		Operation(String method, long duration, boolean success) {
+			this.method = method;
+			this.duration = duration;
+			this.success = success;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * @return request duration in milliseconds
+		 */
+		public long getDuration() {
+			return duration;
+		}
+
+		public boolean isSuccess() {
+			return success;
+		}
+	}
+
+	private final String projectIdentifier;
+	private final String taskReference;
+	private final long queuedTime;
+
+	private volatile Status status = Status.QUEUED;
+	private long startTime;
+	private long endTime;
+	private String taskURL;
+	private String log;
+	private final List<Operation> operations = new ArrayList<Operation>();
+
+	private transient Run<?, ?> run;
+	private transient ByteArrayOutputStream logBuffer;
+
+	KanboardPublisherAction(String projectIdentifier, String taskReference) {
+		this.projectIdentifier = projectIdentifier;
+		this.taskReference = taskReference;
+		this.queuedTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public String getIconFileName() {
+		return "notepad.png";
+	}
+
+	@Override
+	public String getDisplayName() {
+		return Messages.publisher_action_title();
+	}
+
+	@Override
+	public String getUrlName() {
+		return "kanboard";
+	}
+
+	@Override
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	@Override
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+		if (!status.isDone()) {
+			status = Status.ABORTED;
+		}
+	}
+
+	public Run<?, ?> getRun() {
+		return run;
+	}
+
+	public String getProjectIdentifier() {
+		return projectIdentifier;
+	}
+
+	public String getTaskReference() {
+		return taskReference;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getTaskURL() {
+		return taskURL;
+	}
+
+	/**
+	 * @return time spent waiting for a background worker, in milliseconds
+	 */
+	public synchronized long getQueueDuration() {
+		return (startTime == 0) ? 0 : startTime - queuedTime;
+	}
+
+	/**
+	 * @return time spent publishing the task, in milliseconds
+	 */
+	public synchronized long getDuration() {
+		return (endTime == 0) ? 0 : endTime - startTime;
+	}
+
+	public synchronized String getLog() {
+		if (logBuffer != null) {
+			return new String(logBuffer.toByteArray(), UTF8);
+		}
+		return log;
+	}
+
+	public synchronized List<Operation> getOperations() {
+		return Collections.unmodifiableList(new ArrayList<Operation>(operations));
+	}
+
+	@Override
+	public synchronized void record(String operation, long duration, boolean success) {
+		operations.add(new Operation(operation, duration, success));
+	}
+
+	/**
+	 * @return the logger the task publication is reported to
+	 */
+	synchronized PrintStream start() {
+		status = Status.RUNNING;
+		startTime = System.currentTimeMillis();
+		logBuffer = new ByteArrayOutputStream();
+		try {
+			return new PrintStream(logBuffer, true, UTF8.name());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Records the outcome of the task publication and saves the build.
+	 */
+	void finish(Status outcome, String url) {
+		synchronized (this) {
+			status = outcome;
+			taskURL = url;
+			endTime = System.currentTimeMillis();
+			if (logBuffer != null) {
+				log = new String(logBuffer.toByteArray(), UTF8);
+				logBuffer = null;
+			}
+		}
+		if (run != null) {
+			try {
+				run.save();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to save " + run, e);
+			}
+		}
+	}
+
+}
@@ -50,6 +50,7 @@ public class KanboardQueryTrigger extends Trigger<BuildableItem> {
 
 	private static final String FINGERPRINT_FILE_NAME = "kanboard-query-trigger-last";
 	private static final String JSON_TASK_GROUPS = "_groups_";
+	private static final String[] QUERY_TASK_FIELDS = { Kanboard.REFERENCE, Kanboard.DATE_MOVED };
 
 	private final String crontabSpec;
 	private final String projectIdentifier;
@@ -119,15 +120,15 @@ public class KanboardQueryTrigger extends Trigger<BuildableItem> {
 					config.getApiTokenCredentialId());
 
 			String projectIdentifierValue = Util.replaceMacro(projectIdentifier, envVars);
-			JSONObject jsonProject = Kanboard.getProjectByIdentifier(session, logger, projectIdentifierValue,
-					debugMode);
+			JSONObject jsonProject = KanboardMetadataCache.getProjectByIdentifier(session, logger,
+					projectIdentifierValue, debugMode);
 			if (jsonProject == null) {
 				throw new RuntimeException(Messages.project_not_found(projectIdentifierValue));
 			}
 			Object projectId = jsonProject.get(Kanboard.ID);
 
 			String queryValue = Util.replaceMacro(query, envVars);
-			JSONArray jsonTasks = Kanboard.searchTasks(session, logger, projectId, queryValue,
+			JSONArray jsonTasks = Kanboard.searchTasks(session, logger, projectId, queryValue, QUERY_TASK_FIELDS,
 					debugMode);
 
 			Pattern referencePattern = getReferencePattern(referenceRegexp, envVars);
@@ -0,0 +1,149 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per endpoint admission controller shared by all the builds of this Jenkins
+ * instance. It limits both the number of requests in flight and the number of
+ * requests sent per second, using a token bucket allowing bursts of one second
+ * worth of requests. Waiting requests are served in arrival order so that no
+ * build gets starved by another one.
+ */
+public final class KanboardRateLimiter {
+
+	static final int DEFAULT_MAXCONCURRENTREQUESTS = 8;
+	static final int DEFAULT_REQUESTSPERSECOND = 0;
+
+	private static final ConcurrentMap<String, KanboardRateLimiter> LIMITERS = //
+			new ConcurrentHashMap<String, KanboardRateLimiter>();
+
+	private static volatile int maxConcurrentRequests = DEFAULT_MAXCONCURRENTREQUESTS;
+	private static volatile int requestsPerSecond = DEFAULT_REQUESTSPERSECOND;
+
+	private final String endpoint;
+	private final Semaphore inFlight;
+	private final int burst;
+	private final long intervalNanos;
+
+	private long nextFreeNanos;
+	private boolean started;
+
+	private KanboardRateLimiter(String endpoint, int maxConcurrent, int rate) {
+		this.endpoint = endpoint;
+		this.inFlight = (maxConcurrent > 0) ? new Semaphore(maxConcurrent, true) : null;
+		this.burst = rate;
+		this.intervalNanos = (rate > 0) ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+	}
+
+	/**
+	 * @param maxConcurrent
+	 *            maximum number of requests in flight per endpoint, 0 for no
+	 *            limit
+	 * @param rate
+	 *            maximum number of requests per second per endpoint, 0 for no
+	 *            limit
+	 */
+	static void configure(int maxConcurrent, int rate) {
+		maxConcurrentRequests = Math.max(maxConcurrent, 0);
+		requestsPerSecond = Math.max(rate, 0);
+		// Requests in flight release the permits of the limiter they acquired
+		LIMITERS.clear();
+	}
+
+	/**
+	 * @return maximum number of requests in flight per endpoint, 0 for no
+	 *         limit
+	 */
+	static int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	public static KanboardRateLimiter get(URL url) {
+		String endpoint = String.valueOf(url);
+		KanboardRateLimiter limiter = LIMITERS.get(endpoint);
+		if (limiter == null) {
+			KanboardRateLimiter newLimiter = new KanboardRateLimiter(endpoint, maxConcurrentRequests,
+					requestsPerSecond);
+			limiter = LIMITERS.putIfAbsent(endpoint, newLimiter);
+			if (limiter == null) {
+				limiter = newLimiter;
+			}
+		}
+		return limiter;
+	}
+
+	public static List<KanboardRateLimiter> all() {
+		List<KanboardRateLimiter> limiters = new ArrayList<KanboardRateLimiter>(LIMITERS.values());
+		return Collections.unmodifiableList(limiters);
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return number of requests waiting for a free slot
+	 */
+	public int getQueueLength() {
+		return (inFlight != null) ? inFlight.getQueueLength() : 0;
+	}
+
+	/**
+	 * Waits until a request can be sent to the endpoint. Each successful call
+	 * must be followed by a call to {@link #release()} once the request is
+	 * done.
+	 *
+	 * @return time spent waiting, in milliseconds
+	 */
+	public long acquire() throws InterruptedException {
+		long start = System.nanoTime();
+		if (inFlight != null) {
+			inFlight.acquire();
+		}
+		try {
+			long delay = reserve();
+			if (delay > 0) {
+				TimeUnit.NANOSECONDS.sleep(delay);
+			}
+		} catch (InterruptedException e) {
+			release();
+			throw e;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	public void release() {
+		if (inFlight != null) {
+			inFlight.release();
+		}
+	}
+
+	/**
+	 * Takes the next token of the bucket.
+	 *
+	 * @return delay in nanoseconds before the token becomes available
+	 */
+	private synchronized long reserve() {
+		if (intervalNanos == 0) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		// The bucket never holds more than burst tokens
+		long earliest = now - (burst - 1) * intervalNanos;
+		if (!started || (nextFreeNanos - earliest < 0)) {
+			nextFreeNanos = earliest;
+			started = true;
+		}
+		long delay = nextFreeNanos - now;
+		nextFreeNanos += intervalNanos;
+		return Math.max(delay, 0);
+	}
+
+}
@@ -0,0 +1,232 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParseException;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+/**
+ * JSON-RPC 2.0 client session sending its requests through a pluggable
+ * {@link KanboardTransport} instead of a new {@code HttpURLConnection}.
+ * Read only requests failing on a transient error are retried with a jittered
+ * exponential backoff, and requests fail fast while the endpoint circuit
+ * breaker is open. Requests are admitted through the endpoint
+ * {@link KanboardRateLimiter}.
+ */
+public class KanboardSession extends JSONRPC2Session {
+
+	static final int DEFAULT_RETRYCOUNT = 2;
+	static final int DEFAULT_RETRYBACKOFF = 500;
+
+	private static final long MAX_RETRY_BACKOFF = 30000;
+
+	/** Queue waits shorter than this, in milliseconds, are not logged. */
+	private static final long QUEUE_WAIT_LOG_THRESHOLD = 100;
+
+	private static volatile KanboardTransport defaultTransport = KanboardHttpTransport.get();
+
+	private static volatile int retryCount = DEFAULT_RETRYCOUNT;
+	private static volatile long retryBackoff = DEFAULT_RETRYBACKOFF;
+
+	private final KanboardTransport transport;
+	private final Map<String, String> headers;
+
+	private volatile PrintStream logger;
+	private volatile OperationRecorder operationRecorder;
+
+	/**
+	 * Receives the duration of the requests sent through a session.
+	 */
+	public interface OperationRecorder {
+
+		/**
+		 * @param operation
+		 *            the called method, each call of a batch request being
+		 *            recorded on its own
+		 * @param duration
+		 *            request duration in milliseconds, retries included
+		 * @param success
+		 *            false if the request failed or Kanboard returned an error
+		 */
+		void record(String operation, long duration, boolean success);
+
+	}
+
+	public KanboardSession(URL url, KanboardTransport transport, Utils.ApiAuthenticator authenticator) {
+		super(url);
+		this.transport = transport;
+		Map<String, String> sessionHeaders = new HashMap<String, String>();
+		sessionHeaders.put(Utils.ApiAuthenticator.HEADER, authenticator.getHeaderValue());
+		this.headers = Collections.unmodifiableMap(sessionHeaders);
+		setConnectionConfigurator(authenticator);
+	}
+
+	public static KanboardTransport getDefaultTransport() {
+		return defaultTransport;
+	}
+
+	public static void setDefaultTransport(KanboardTransport transport) {
+		defaultTransport = transport;
+	}
+
+	public KanboardTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * @param logger
+	 *            build logger the time spent waiting for the rate limiter is
+	 *            reported to, may be null
+	 */
+	public void setLogger(PrintStream logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * @param operationRecorder
+	 *            recorder of the requests sent through this session, may be
+	 *            null
+	 */
+	public void setOperationRecorder(OperationRecorder operationRecorder) {
+		this.operationRecorder = operationRecorder;
+	}
+
+	/**
+	 * @param start
+	 *            request start, as returned by {@link System#nanoTime()}
+	 */
+	void recordOperation(String operation, long start, boolean success) {
+		OperationRecorder recorder = operationRecorder;
+		if (recorder != null) {
+			recorder.record(operation, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), success);
+		}
+	}
+
+	/**
+	 * @param count
+	 *            maximum number of retries of a read only request
+	 * @param backoff
+	 *            initial delay in milliseconds before retrying, doubled on
+	 *            each retry
+	 */
+	static void configureRetries(int count, int backoff) {
+		retryCount = Math.max(count, 0);
+		retryBackoff = Math.max(backoff, 0);
+	}
+
+	@Override
+	public JSONRPC2Response send(JSONRPC2Request request) throws JSONRPC2SessionException {
+		String jsonResponse = post(KanboardTransport.RequestBody.of(request.toJSONString()),
+				Kanboard.isReadOnly(request.getMethod()), KanboardTransport.STRING_RESPONSE);
+		return parseResponse(jsonResponse);
+	}
+
+	static JSONRPC2Response parseResponse(String jsonResponse) throws JSONRPC2SessionException {
+		try {
+			return JSONRPC2Response.parse(jsonResponse);
+		} catch (JSONRPC2ParseException e) {
+			throw new JSONRPC2SessionException("Invalid JSON-RPC 2.0 response: " + e.getMessage(),
+					JSONRPC2SessionException.BAD_RESPONSE, e);
+		}
+	}
+
+	/**
+	 * Posts a raw JSON-RPC request to the session endpoint, the request is
+	 * written by the given body and the response is handed to the given
+	 * handler as it is received.
+	 *
+	 * @param readOnly
+	 *            true if the request can safely be sent again on failure, the
+	 *            body is then written again and the handler invoked again with
+	 *            the new response
+	 */
+	<T> T post(KanboardTransport.RequestBody body, boolean readOnly, KanboardTransport.ResponseHandler<T> handler)
+			throws JSONRPC2SessionException {
+
+		KanboardCircuitBreaker breaker = KanboardCircuitBreaker.get(getURL());
+		KanboardRateLimiter limiter = KanboardRateLimiter.get(getURL());
+
+		for (int attempt = 0;; attempt++) {
+
+			// The slot is taken first, so that an interrupted wait doesn't
+			// leave a half open breaker trial claimed by no request
+			try {
+				long queueWait = limiter.acquire();
+				if ((logger != null) && (queueWait >= QUEUE_WAIT_LOG_THRESHOLD)) {
+					logger.println(Messages.rate_limiter_wait(queueWait));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JSONRPC2SessionException("Interrupted while waiting for a request slot",
+						JSONRPC2SessionException.NETWORK_EXCEPTION, e);
+			}
+
+			if (!breaker.allowRequest()) {
+				limiter.release();
+				throw new JSONRPC2SessionException(Messages.circuit_breaker_open(getURL(), breaker.getRetryDate()),
+						JSONRPC2SessionException.NETWORK_EXCEPTION);
+			}
+
+			IOException failure;
+			boolean transientFailure;
+			try {
+				T response = transport.post(getURL(), headers, body, handler);
+				breaker.recordSuccess();
+				return response;
+			} catch (KanboardTransport.HttpStatusException e) {
+				failure = e;
+				transientFailure = e.isTransient();
+			} catch (IOException e) {
+				failure = e;
+				transientFailure = true;
+			} catch (RuntimeException e) {
+				breaker.recordFailure();
+				throw e;
+			} finally {
+				limiter.release();
+			}
+
+			if (transientFailure) {
+				breaker.recordFailure();
+			} else {
+				breaker.recordSuccess(); // The endpoint is up, the request was rejected
+			}
+
+			if (!readOnly || !transientFailure || (attempt >= retryCount)) {
+				throw new JSONRPC2SessionException("Network exception: " + failure.getMessage(),
+						JSONRPC2SessionException.NETWORK_EXCEPTION, failure);
+			}
+
+			try {
+				Thread.sleep(getRetryDelay(attempt));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JSONRPC2SessionException("Interrupted while waiting to retry: " + failure.getMessage(),
+						JSONRPC2SessionException.NETWORK_EXCEPTION, failure);
+			}
+		}
+	}
+
+	/**
+	 * @return a random delay between half and all of the exponential backoff
+	 *         for the given attempt
+	 */
+	private static long getRetryDelay(int attempt) {
+		long backoff = Math.min(retryBackoff << Math.min(attempt, 16), MAX_RETRY_BACKOFF);
+		if (backoff == 0) {
+			return 0;
+		}
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+
+}
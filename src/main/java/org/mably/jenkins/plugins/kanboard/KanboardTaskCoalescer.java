@@ -0,0 +1,188 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+/**
+ * Serializes the publications of a task, so that concurrent builds publishing
+ * to the same task reference don't race to create it or move it back and
+ * forth. While a publication of the task is in flight, a queued publication
+ * superseded by a later one is not sent: the fields the later publication
+ * leaves unchanged are taken from it, and its caller gets the outcome of the
+ * later publication.
+ */
+final class KanboardTaskCoalescer {
+
+	/**
+	 * A task publication, run once the previous publications of the task are
+	 * done.
+	 */
+	interface Publication {
+
+		KanboardTaskPublisher.PublishedTask publish()
+				throws JSONRPC2SessionException, IOException, InterruptedException;
+	}
+
+	private static final Map<String, Queue> QUEUES = new HashMap<String, Queue>();
+
+	/**
+	 * Publications of a task waiting for the one in flight.
+	 */
+	private static final class Queue {
+
+		final LinkedList<Pending> waiting = new LinkedList<Pending>();
+	}
+
+	private static final class Pending {
+
+		final KanboardTaskPublisher.TaskValues values;
+
+		/** Queued publications superseded by this one. */
+		final List<Pending> followers = new ArrayList<Pending>();
+
+		boolean runnable;
+		boolean done;
+		KanboardTaskPublisher.PublishedTask task;
+		Exception failure;
+
+		Pending(KanboardTaskPublisher.TaskValues values) {
+			this.values = values;
+		}
+	}
+
+	private KanboardTaskCoalescer() {
+	}
+
+	/**
+	 * Runs the publication once the previous publications of the task are
+	 * done, unless a later publication supersedes it in the meantime.
+	 *
+	 * @return the published task
+	 */
+	static KanboardTaskPublisher.PublishedTask publish(String endpoint, KanboardTaskPublisher.TaskValues values,
+			PrintStream logger, Publication publication)
+			throws JSONRPC2SessionException, IOException, InterruptedException {
+
+		String key = values.getKey(endpoint);
+		Pending pending = new Pending(values);
+
+		synchronized (QUEUES) {
+			Queue queue = QUEUES.get(key);
+			if (queue == null) {
+				QUEUES.put(key, new Queue());
+			} else {
+				supersede(queue, pending);
+				queue.waiting.add(pending);
+				logger.println(Messages.task_publication_waiting(values.taskReference));
+				try {
+					while (!pending.runnable && !pending.done) {
+						QUEUES.wait();
+					}
+				} catch (InterruptedException e) {
+					withdraw(key, queue, pending);
+					throw e;
+				}
+				if (pending.done) {
+					logger.println(Messages.task_publication_superseded(values.taskReference));
+					return getOutcome(pending);
+				}
+			}
+		}
+
+		try {
+			pending.task = publication.publish();
+		} catch (JSONRPC2SessionException | IOException | InterruptedException | RuntimeException e) {
+			pending.failure = e;
+		} finally {
+			synchronized (QUEUES) {
+				complete(key, pending);
+			}
+		}
+		return getOutcome(pending);
+	}
+
+	/**
+	 * Drops the last queued publication of the task if the new one supersedes
+	 * it, its caller then waiting for the new one. The fields the new
+	 * publication leaves unchanged are taken from the dropped one.
+	 */
+	private static void supersede(Queue queue, Pending pending) {
+		Pending last = queue.waiting.peekLast();
+		if ((last != null) && pending.values.canSupersede(last.values)) {
+			pending.values.mergeEarlier(last.values);
+			queue.waiting.removeLast();
+			pending.followers.addAll(last.followers);
+			pending.followers.add(last);
+			last.followers.clear();
+		}
+	}
+
+	/**
+	 * Removes the publication of an interrupted caller, the latest
+	 * publication it superseded taking its place.
+	 */
+	private static void withdraw(String key, Queue queue, Pending pending) {
+		Pending successor = null;
+		if (!pending.followers.isEmpty()) {
+			successor = pending.followers.remove(pending.followers.size() - 1);
+			successor.followers.addAll(pending.followers);
+			pending.followers.clear();
+		}
+		int index = queue.waiting.indexOf(pending);
+		if (index >= 0) {
+			queue.waiting.remove(index);
+			if (successor != null) {
+				queue.waiting.add(index, successor);
+			}
+		} else if (pending.runnable) {
+			if (successor != null) {
+				queue.waiting.addFirst(successor);
+			}
+			next(key, queue);
+		}
+		QUEUES.notifyAll();
+	}
+
+	private static void complete(String key, Pending pending) {
+		for (Pending follower : pending.followers) {
+			follower.done = true;
+			follower.task = pending.task;
+			follower.failure = pending.failure;
+		}
+		pending.done = true;
+		next(key, QUEUES.get(key));
+		QUEUES.notifyAll();
+	}
+
+	private static void next(String key, Queue queue) {
+		Pending next = queue.waiting.pollFirst();
+		if (next == null) {
+			QUEUES.remove(key);
+		} else {
+			next.runnable = true;
+		}
+	}
+
+	private static KanboardTaskPublisher.PublishedTask getOutcome(Pending pending)
+			throws JSONRPC2SessionException, IOException, InterruptedException {
+		Exception failure = pending.failure;
+		if (failure == null) {
+			return pending.task;
+		} else if (failure instanceof JSONRPC2SessionException) {
+			throw (JSONRPC2SessionException) failure;
+		} else if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof InterruptedException) {
+			throw (InterruptedException) failure;
+		}
+		throw (RuntimeException) failure;
+	}
+
+}
@@ -1,6 +1,5 @@
 package org.mably.jenkins.plugins.kanboard;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
@@ -12,7 +11,6 @@ import java.util.Map;
 
 import javax.inject.Inject;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -21,6 +19,7 @@ import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
 import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
 
@@ -52,17 +51,26 @@ public class KanboardTaskFetcher extends Builder {
 	static final String KANBOARD_FILES_ENVVAR = "KANBOARD_FILES";
 	static final String KANBOARD_TITLE_ENVVAR = "KANBOARD_TITLE";
 	static final String KANBOARD_TASKJSON_ENVVAR = "KANBOARD_TASKJSON";
+	static final String KANBOARD_IDS_ENVVAR = "KANBOARD_IDS";
+	static final String KANBOARD_TASKSJSON_ENVVAR = "KANBOARD_TASKSJSON";
 
 	private static final String ATTACHMENTS_DIR = "attachments";
 	private static final String KANBOARD_BASEDIR = "kanboard";
 	private static final String LINKS_DIR = "links";
 	private static final String TASK_JSON_FILENAME = "data.json";
+	private static final String INDEX_JSON_FILENAME = "index.json";
+	private static final String INDEX_CREATOR = "creator";
+	private static final String INDEX_OWNER = "owner";
+	private static final String INDEX_FILES = "files";
+	private static final String INDEX_JSON = "json";
+	private static final int TASKS_PER_BATCH = 20;
 
 	private final String projectIdentifier;
 	private final String taskReference;
 
 	private String taskLinks;
 	private String taskAttachments;
+	private String taskQuery;
 
 	@DataBoundConstructor
 	public KanboardTaskFetcher(String projectIdentifier, String taskReference) {
@@ -96,6 +104,15 @@ public class KanboardTaskFetcher extends Builder {
 		this.taskAttachments = taskAttachments;
 	}
 
+	public String getTaskQuery() {
+		return taskQuery;
+	}
+
+	@DataBoundSetter
+	public void setTaskQuery(String taskQuery) {
+		this.taskQuery = taskQuery;
+	}
+
 	@Override
 	public BuildStepMonitor getRequiredMonitorService() {
 		return BuildStepMonitor.BUILD;
@@ -121,202 +138,571 @@ public class KanboardTaskFetcher extends Builder {
 				throw new AbortException(Messages.workspace_not_found());
 			}
 
-			KanboardGlobalConfiguration config = getDescriptor().getGlobalConfiguration();
-			final boolean debugMode = config.isDebugMode();
 			final PrintStream logger = listener.getLogger();
 
 			String projectIdentifierValue = TokenMacro.expandAll(build, listener, this.projectIdentifier);
-			String taskRefValue = TokenMacro.expandAll(build, listener, this.taskReference);
 
 			String[] taskLinksValue = Utils.getCSVStringValue(build, listener, this.taskLinks);
 
 			String[] taskAttachmentsValue = Utils.getCSVStringValue(build, listener, this.taskAttachments);
 
-			logger.println(Messages.kanboard_fetcher_running(Utils.getImplementationVersion(), config.getEndpoint(),
-					projectIdentifierValue, taskRefValue));
-
-			JSONRPC2Session session = Utils.initJSONRPCSession(config.getEndpoint(), config.getApiToken(),
-					config.getApiTokenCredentialId());
-
-			JSONObject jsonProject = Kanboard.getProjectByIdentifier(session, logger, projectIdentifierValue,
-					debugMode);
-			if (jsonProject == null) {
-				throw new AbortException(Messages.project_not_found(projectIdentifierValue));
+			if (StringUtils.isNotBlank(this.taskQuery)) {
+				String queryValue = TokenMacro.expandAll(build, listener, this.taskQuery);
+				exportTasks(build, fetchTasks(projectIdentifierValue, queryValue, taskLinksValue,
+						taskAttachmentsValue, workspace, logger), logger);
+				return true;
 			}
-			Object projectId = jsonProject.get(Kanboard.ID);
 
-			JSONObject jsonTask = Kanboard.getTaskByReference(session, logger, projectId, taskRefValue, debugMode);
-
-			if (jsonTask == null) {
+			String taskRefValue = TokenMacro.expandAll(build, listener, this.taskReference);
 
-				logger.println(Messages.task_not_found(taskRefValue));
+			FetchedTask task = fetchTask(projectIdentifierValue, taskRefValue, taskLinksValue,
+					taskAttachmentsValue, workspace, logger);
 
-			} else {
+			if (task != null) {
 
-				Object taskId = jsonTask.get(Kanboard.ID);
-				Object creatorId = jsonTask.get(Kanboard.CREATOR_ID);
-				Object ownerId = jsonTask.get(Kanboard.OWNER_ID);
-				String title = String.valueOf(jsonTask.get(Kanboard.TITLE));
+				Utils.exportEnvironmentVariable(build, KANBOARD_ID_ENVVAR, task.getId());
 
-				Utils.exportEnvironmentVariable(build, KANBOARD_ID_ENVVAR, String.valueOf(taskId));
+				if (task.getCreator() != null) {
+					Utils.exportEnvironmentVariable(build, KANBOARD_CREATOR_ENVVAR, task.getCreator());
+				}
 
-				String creatorName = null;
-				if (creatorId != null && StringUtils.isNotBlank(String.valueOf(creatorId))) {
-					JSONObject jsonCreator = Kanboard.getUser(session, logger, creatorId, debugMode);
-					if (jsonCreator != null) {
-						creatorName = String.valueOf(jsonCreator.get(Kanboard.USERNAME));
-						Utils.exportEnvironmentVariable(build, KANBOARD_CREATOR_ENVVAR, creatorName);
-					}
+				if (task.getOwner() != null) {
+					Utils.exportEnvironmentVariable(build, KANBOARD_OWNER_ENVVAR, task.getOwner());
 				}
 
-				String ownerName = null;
-				if (ownerId != null && StringUtils.isNotBlank(String.valueOf(ownerId))) {
-					if (ownerId.equals(creatorId)) {
-						ownerName = creatorName;
-						Utils.exportEnvironmentVariable(build, KANBOARD_OWNER_ENVVAR, ownerName);
-					} else {
-						JSONObject jsonOwner = Kanboard.getUser(session, logger, ownerId, debugMode);
-						if (jsonOwner != null) {
-							ownerName = String.valueOf(jsonOwner.get(Kanboard.USERNAME));
-							Utils.exportEnvironmentVariable(build, KANBOARD_OWNER_ENVVAR, ownerName);
-						}
-					}
+				if (StringUtils.isNotBlank(task.getTitle())) {
+					Utils.exportEnvironmentVariable(build, KANBOARD_TITLE_ENVVAR, task.getTitle());
 				}
 
-				if (StringUtils.isNotBlank(title)) {
-					Utils.exportEnvironmentVariable(build, KANBOARD_TITLE_ENVVAR, title);
+				// Export task files environment variable
+				String fetchedFilesPathsEnvVar = StringUtils.join(task.getFiles(), ',');
+				if (StringUtils.isNotBlank(fetchedFilesPathsEnvVar)) {
+
+					Utils.exportEnvironmentVariable(build, KANBOARD_FILES_ENVVAR, fetchedFilesPathsEnvVar);
+					logger.println(Messages.attachments_envvar_success(fetchedFilesPathsEnvVar, KANBOARD_FILES_ENVVAR));
 				}
 
-				List<String> fetchedAttachments = new ArrayList<String>();
+				Utils.exportEnvironmentVariable(build, KANBOARD_TASKJSON_ENVVAR, task.getJSONPath());
+				logger.println(Messages.taskjson_envvar_success(task.getJSONPath(), KANBOARD_TASKJSON_ENVVAR));
+
+			}
 
-				if (ArrayUtils.isNotEmpty(taskLinksValue)) {
+		} catch (JSONRPC2SessionException | IOException | InterruptedException | MacroEvaluationException e) {
 
-					JSONArray jsonLinks = Kanboard.getAllExternalTaskLinks(session, logger, taskId, debugMode);
+			throw new AbortException(e.getMessage());
 
-					Map<String, JSONObject> existingLinks = new HashMap<String, JSONObject>();
+		}
 
-					if (jsonLinks != null) {
-						for (int i = 0; i < jsonLinks.size(); i++) {
-							JSONObject jsonLink = (JSONObject) jsonLinks.get(i);
-							String type = String.valueOf(jsonLink.get(Kanboard.LINK_TYPE));
-							if (Kanboard.LINKTYPE_ATTACHMENT.equals(type)) {
-								String linkUrl = String.valueOf(jsonLink.get(Kanboard.URL));
-								try {
-									URL url = new URL(linkUrl);
-									existingLinks.put(FilenameUtils.getName(url.getPath()), jsonLink);
-								} catch (MalformedURLException e) {
-									continue;
-								}
-							}
-						}
-					}
+		return true;
+	}
 
-					for (int i = 0; i < taskLinksValue.length; i++) {
+	private static void exportTasks(AbstractBuild<?, ?> build, FetchedTasks tasks, PrintStream logger) {
 
-						try {
+		List<String> ids = new ArrayList<String>();
+		List<String> files = new ArrayList<String>();
+		for (FetchedTask task : tasks.getTasks()) {
+			ids.add(task.getId());
+			files.addAll(task.getFiles());
+		}
 
-							String linkValue = taskLinksValue[i];
+		String idsEnvVar = StringUtils.join(ids, ',');
+		Utils.exportEnvironmentVariable(build, KANBOARD_IDS_ENVVAR, idsEnvVar);
+		logger.println(Messages.taskids_envvar_success(idsEnvVar, KANBOARD_IDS_ENVVAR));
 
-							if (existingLinks.containsKey(linkValue)) {
+		String fetchedFilesPathsEnvVar = StringUtils.join(files, ',');
+		if (StringUtils.isNotBlank(fetchedFilesPathsEnvVar)) {
+			Utils.exportEnvironmentVariable(build, KANBOARD_FILES_ENVVAR, fetchedFilesPathsEnvVar);
+			logger.println(Messages.attachments_envvar_success(fetchedFilesPathsEnvVar, KANBOARD_FILES_ENVVAR));
+		}
 
-								JSONObject jsonLink = existingLinks.get(linkValue);
-								String linkId = String.valueOf(jsonLink.get(Kanboard.ID));
-								String linkUrl = String.valueOf(jsonLink.get(Kanboard.URL));
+		Utils.exportEnvironmentVariable(build, KANBOARD_TASKSJSON_ENVVAR, tasks.getJSONPath());
+		logger.println(Messages.tasksjson_envvar_success(tasks.getJSONPath(), KANBOARD_TASKSJSON_ENVVAR));
+	}
 
-								byte[] fetchedData = Utils.fetchURL(new URL(linkUrl));
-								if (fetchedData != null) {
-									String filepath = workspace
-											.child(KANBOARD_BASEDIR + File.separator + taskId + File.separator
-													+ LINKS_DIR + File.separator + linkId + File.separator + linkValue)
-											.getRemote();
-									File file = new File(filepath);
-									FileUtils.writeByteArrayToFile(file, fetchedData);
-									fetchedAttachments.add(file.getCanonicalPath());
-								}
+	/**
+	 * Fetches the task and the given links and attachments.
+	 *
+	 * @param workspace
+	 *            workspace the links, attachments and task JSON file are
+	 *            written to, may be null if there are no links nor
+	 *            attachments to fetch, the task JSON file then not being
+	 *            written
+	 * @return the fetched task, null if there is no such task
+	 */
+	FetchedTask fetchTask(String projectIdentifierValue, String taskRefValue, String[] taskLinksValue,
+			String[] taskAttachmentsValue, final FilePath workspace, PrintStream logger)
+			throws JSONRPC2SessionException, IOException, InterruptedException {
+
+		if ((workspace == null)
+				&& (ArrayUtils.isNotEmpty(taskLinksValue) || ArrayUtils.isNotEmpty(taskAttachmentsValue))) {
+			throw new AbortException(Messages.workspace_not_found());
+		}
 
-							}
+		KanboardGlobalConfiguration config = getDescriptor().getGlobalConfiguration();
+		boolean debugMode = config.isDebugMode();
+
+		logger.println(Messages.kanboard_fetcher_running(Utils.getImplementationVersion(), config.getEndpoint(),
+				projectIdentifierValue, taskRefValue));
+
+		JSONRPC2Session session = Utils.initJSONRPCSession(config.getEndpoint(), config.getApiToken(),
+				config.getApiTokenCredentialId(), logger);
+
+		JSONObject jsonProject = KanboardMetadataCache.getProjectByIdentifier(session, logger, projectIdentifierValue,
+				debugMode);
+		if (jsonProject == null) {
+			throw new AbortException(Messages.project_not_found(projectIdentifierValue));
+		}
+		Object projectId = jsonProject.get(Kanboard.ID);
+
+		JSONObject jsonTask = Kanboard.getTaskByReference(session, logger, projectId, taskRefValue, debugMode);
+
+		if (jsonTask == null) {
+			logger.println(Messages.task_not_found(taskRefValue));
+			return null;
+		}
+
+		TaskFetch fetch = new TaskFetch(jsonTask, taskLinksValue, taskAttachmentsValue, workspace, session,
+				config.getEndpoint(), debugMode);
+
+		// Fetch creator and owner (unless cached), links and files in a
+		// single batch request
+		KanboardBatch batch = new KanboardBatch();
+		fetch.addCalls(batch, new HashMap<String, KanboardUserCache.Lookup>());
+		batch.send(session, logger, debugMode);
+		fetch.resolveUsers();
+
+		KanboardDownloadStage downloads = new KanboardDownloadStage(logger);
+		fetch.addDownloads(downloads);
+		downloads.run();
+		fetch.addFiles();
+		fetch.writeJSON();
+
+		return fetch.task;
+	}
+
+	/**
+	 * Fetches all the tasks matching the given query, and the given links and
+	 * attachments of each of them. The query is run once, then the creators,
+	 * owners, links and files of the found tasks are fetched by batches sent
+	 * concurrently, each user being looked up only once, and the links and
+	 * attachments of all the tasks are downloaded by a single download stage.
+	 *
+	 * @param workspace
+	 *            workspace the links, attachments, task JSON files and index
+	 *            file are written to, may be null if there are no links nor
+	 *            attachments to fetch, the JSON files then not being written
+	 * @return the fetched tasks, in query order
+	 */
+	FetchedTasks fetchTasks(String projectIdentifierValue, String queryValue, String[] taskLinksValue,
+			String[] taskAttachmentsValue, final FilePath workspace, PrintStream logger)
+			throws JSONRPC2SessionException, IOException, InterruptedException {
+
+		if ((workspace == null)
+				&& (ArrayUtils.isNotEmpty(taskLinksValue) || ArrayUtils.isNotEmpty(taskAttachmentsValue))) {
+			throw new AbortException(Messages.workspace_not_found());
+		}
+
+		KanboardGlobalConfiguration config = getDescriptor().getGlobalConfiguration();
+		boolean debugMode = config.isDebugMode();
+
+		logger.println(Messages.kanboard_fetcher_query_running(Utils.getImplementationVersion(),
+				config.getEndpoint(), projectIdentifierValue, queryValue));
+
+		JSONRPC2Session session = Utils.initJSONRPCSession(config.getEndpoint(), config.getApiToken(),
+				config.getApiTokenCredentialId(), logger);
+
+		JSONObject jsonProject = KanboardMetadataCache.getProjectByIdentifier(session, logger, projectIdentifierValue,
+				debugMode);
+		if (jsonProject == null) {
+			throw new AbortException(Messages.project_not_found(projectIdentifierValue));
+		}
+		Object projectId = jsonProject.get(Kanboard.ID);
+
+		JSONArray jsonTasks = Kanboard.searchTasks(session, logger, projectId, queryValue, debugMode);
+
+		List<TaskFetch> fetches = new ArrayList<TaskFetch>();
+		if (jsonTasks != null) {
+			for (int i = 0; i < jsonTasks.size(); i++) {
+				fetches.add(new TaskFetch((JSONObject) jsonTasks.get(i), taskLinksValue, taskAttachmentsValue,
+						workspace, session, config.getEndpoint(), debugMode));
+			}
+		}
+		logger.println(Messages.tasks_found(fetches.size(), queryValue));
+
+		// Fetch creators and owners (unless cached), links and files by
+		// batches sent concurrently, users shared by several tasks being
+		// looked up only once
+		KanboardAsyncClient asyncClient = new KanboardAsyncClient(session, logger, debugMode);
+		Map<String, KanboardUserCache.Lookup> users = new HashMap<String, KanboardUserCache.Lookup>();
+		List<ListenableFuture<KanboardBatch>> batches = new ArrayList<ListenableFuture<KanboardBatch>>();
+		for (int from = 0; from < fetches.size(); from += TASKS_PER_BATCH) {
+			KanboardBatch batch = new KanboardBatch();
+			for (TaskFetch fetch : fetches.subList(from, Math.min(from + TASKS_PER_BATCH, fetches.size()))) {
+				fetch.addCalls(batch, users);
+			}
+			batches.add(asyncClient.send(batch));
+		}
+		KanboardAsyncClient.get(KanboardAsyncClient.allAsList(batches));
+
+		KanboardDownloadStage downloads = new KanboardDownloadStage(logger);
+		for (TaskFetch fetch : fetches) {
+			fetch.resolveUsers();
+			fetch.addDownloads(downloads);
+		}
+		downloads.run();
+
+		FetchedTasks tasks = new FetchedTasks();
+		JSONArray jsonIndex = new JSONArray();
+		for (TaskFetch fetch : fetches) {
+			fetch.addFiles();
+			fetch.writeJSON();
+			tasks.tasks.add(fetch.task);
+
+			JSONObject jsonEntry = new JSONObject();
+			jsonEntry.put(Kanboard.ID, fetch.task.getId());
+			jsonEntry.put(Kanboard.REFERENCE, fetch.task.getReference());
+			jsonEntry.put(Kanboard.TITLE, fetch.task.getTitle());
+			jsonEntry.put(Kanboard.URL, fetch.task.getURL());
+			jsonEntry.put(INDEX_CREATOR, fetch.task.getCreator());
+			jsonEntry.put(INDEX_OWNER, fetch.task.getOwner());
+			jsonEntry.put(INDEX_FILES, fetch.task.getFiles());
+			jsonEntry.put(INDEX_JSON, fetch.task.getJSONPath());
+			jsonIndex.add(jsonEntry);
+		}
+
+		if (workspace != null) {
+			FilePath indexFile = workspace.child(KANBOARD_BASEDIR + "/" + INDEX_JSON_FILENAME);
+			indexFile.write(jsonIndex.toJSONString(new JSONStyleIdent()), "UTF-8");
+			tasks.jsonPath = indexFile.getRemote();
+		}
+
+		return tasks;
+	}
+
+	/**
+	 * Fetch of a single task, whose calls may share a batch with other tasks
+	 * and whose downloads may share a download stage with other tasks.
+	 */
+	private static final class TaskFetch {
+
+		private final JSONObject jsonTask;
+		private final FetchedTask task;
+		private final String taskDir;
+		private final String[] taskLinksValue;
+		private final String[] taskAttachmentsValue;
+		private final FilePath workspace;
+		private final JSONRPC2Session session;
+		private final String endpoint;
+		private final boolean debugMode;
+
+		private KanboardUserCache.Lookup creatorLookup;
+		private KanboardUserCache.Lookup ownerLookup;
+		private KanboardBatch.Call<JSONArray> linksCall;
+		private KanboardBatch.Call<JSONArray> filesCall;
+		private final List<KanboardDownloadStage.Download> downloads = new ArrayList<KanboardDownloadStage.Download>();
+
+		TaskFetch(JSONObject jsonTask, String[] taskLinksValue, String[] taskAttachmentsValue, FilePath workspace,
+				JSONRPC2Session session, String endpoint, boolean debugMode) {
+			this.jsonTask = jsonTask;
+			this.task = new FetchedTask(String.valueOf(jsonTask.get(Kanboard.ID)),
+					String.valueOf(jsonTask.get(Kanboard.REFERENCE)), String.valueOf(jsonTask.get(Kanboard.TITLE)),
+					String.valueOf(jsonTask.get(Kanboard.URL)));
+			this.taskDir = KANBOARD_BASEDIR + "/" + task.getId() + "/";
+			this.taskLinksValue = taskLinksValue;
+			this.taskAttachmentsValue = taskAttachmentsValue;
+			this.workspace = workspace;
+			this.session = session;
+			this.endpoint = endpoint;
+			this.debugMode = debugMode;
+		}
+
+		/**
+		 * Adds the calls fetching the creator and owner (unless cached),
+		 * links and files of the task to the batch.
+		 *
+		 * @param users
+		 *            lookups of the users already added to a batch, by id
+		 */
+		void addCalls(KanboardBatch batch, Map<String, KanboardUserCache.Lookup> users) {
+			Object taskId = jsonTask.get(Kanboard.ID);
+			creatorLookup = lookupUser(batch, users, jsonTask.get(Kanboard.CREATOR_ID));
+			ownerLookup = lookupUser(batch, users, jsonTask.get(Kanboard.OWNER_ID));
+			if (ArrayUtils.isNotEmpty(taskLinksValue)) {
+				linksCall = Kanboard.getAllExternalTaskLinks(batch, taskId);
+			}
+			if (ArrayUtils.isNotEmpty(taskAttachmentsValue)) {
+				filesCall = Kanboard.getAllTaskFiles(batch, taskId);
+			}
+		}
+
+		private KanboardUserCache.Lookup lookupUser(KanboardBatch batch, Map<String, KanboardUserCache.Lookup> users,
+				Object userId) {
+			if ((userId == null) || StringUtils.isBlank(String.valueOf(userId))) {
+				return null;
+			}
+			String key = String.valueOf(userId);
+			KanboardUserCache.Lookup lookup = users.get(key);
+			if (lookup == null) {
+				lookup = KanboardUserCache.getUsernameById(batch, session, userId);
+				users.put(key, lookup);
+			}
+			return lookup;
+		}
 
-						} catch (IOException e) {
+		/**
+		 * Sets the creator and owner names, once the batch is sent.
+		 */
+		void resolveUsers() throws AbortException {
+			if (creatorLookup != null) {
+				Object username = creatorLookup.get();
+				if (username != null) {
+					task.creator = String.valueOf(username);
+				}
+			}
+			if (ownerLookup != null) {
+				Object username = ownerLookup.get();
+				if (username != null) {
+					task.owner = String.valueOf(username);
+				}
+			}
+		}
+
+		/**
+		 * Adds the downloads of the requested links and attachments found in
+		 * the batch responses.
+		 */
+		void addDownloads(KanboardDownloadStage stage) throws AbortException {
 
-							logger.println(e.getMessage());
+			if (ArrayUtils.isNotEmpty(taskLinksValue)) {
 
+				JSONArray jsonLinks = linksCall.get();
+
+				Map<String, JSONObject> existingLinks = new HashMap<String, JSONObject>();
+
+				if (jsonLinks != null) {
+					for (int i = 0; i < jsonLinks.size(); i++) {
+						JSONObject jsonLink = (JSONObject) jsonLinks.get(i);
+						String type = String.valueOf(jsonLink.get(Kanboard.LINK_TYPE));
+						if (Kanboard.LINKTYPE_ATTACHMENT.equals(type)) {
+							String linkUrl = String.valueOf(jsonLink.get(Kanboard.URL));
+							try {
+								URL url = new URL(linkUrl);
+								existingLinks.put(FilenameUtils.getName(url.getPath()), jsonLink);
+							} catch (MalformedURLException e) {
+								continue;
+							}
 						}
 					}
 				}
 
-				if (ArrayUtils.isNotEmpty(taskAttachmentsValue)) {
+				for (int i = 0; i < taskLinksValue.length; i++) {
 
-					JSONArray jsonFiles = Kanboard.getAllTaskFiles(session, logger, taskId, debugMode);
+					final String linkValue = taskLinksValue[i];
 
-					Map<String, JSONObject> existingFiles = new HashMap<String, JSONObject>();
+					if (existingLinks.containsKey(linkValue)) {
 
-					if (jsonFiles != null) {
-						for (int i = 0; i < jsonFiles.size(); i++) {
-							JSONObject jsonFile = (JSONObject) jsonFiles.get(i);
-							String name = String.valueOf(jsonFile.get(Kanboard.NAME));
-							existingFiles.put(name, jsonFile);
-						}
+						JSONObject jsonLink = existingLinks.get(linkValue);
+						final String linkId = String.valueOf(jsonLink.get(Kanboard.ID));
+						final String linkUrl = String.valueOf(jsonLink.get(Kanboard.URL));
+
+						addDownload(stage, new KanboardDownloadStage.Download() {
+							@Override
+							KanboardDownloadStage.Fetched run(PrintStream downloadLogger)
+									throws IOException, InterruptedException {
+								FilePath file = workspace
+										.child(taskDir + LINKS_DIR + "/" + linkId + "/" + linkValue);
+								long size = KanboardLinkDownloader.download(new URL(linkUrl), file, downloadLogger);
+								return new KanboardDownloadStage.Fetched(file.getRemote(), size);
+							}
+						});
+
+					}
+				}
+			}
+
+			if (ArrayUtils.isNotEmpty(taskAttachmentsValue)) {
+
+				JSONArray jsonFiles = filesCall.get();
+
+				Map<String, JSONObject> existingFiles = new HashMap<String, JSONObject>();
+
+				if (jsonFiles != null) {
+					for (int i = 0; i < jsonFiles.size(); i++) {
+						JSONObject jsonFile = (JSONObject) jsonFiles.get(i);
+						String name = String.valueOf(jsonFile.get(Kanboard.NAME));
+						existingFiles.put(name, jsonFile);
 					}
+				}
 
-					for (int i = 0; i < taskAttachmentsValue.length; i++) {
+				for (int i = 0; i < taskAttachmentsValue.length; i++) {
 
-						try {
+					final String filename = taskAttachmentsValue[i];
 
-							String filename = taskAttachmentsValue[i];
+					if (existingFiles.containsKey(filename)) {
 
-							if (existingFiles.containsKey(filename)) {
+						JSONObject jsonFile = existingFiles.get(filename);
+						final String fileId = String.valueOf(jsonFile.get(Kanboard.ID));
+						final String cacheKey = KanboardAttachmentCache.getKey(endpoint, fileId,
+								jsonFile.get(Kanboard.SIZE), jsonFile.get(Kanboard.DATE));
 
-								JSONObject jsonFile = existingFiles.get(filename);
-								String fileId = String.valueOf(jsonFile.get(Kanboard.ID));
+						addDownload(stage, new KanboardDownloadStage.Download() {
+							@Override
+							KanboardDownloadStage.Fetched run(PrintStream downloadLogger)
+									throws JSONRPC2SessionException, IOException, InterruptedException {
+								FilePath file = workspace
+										.child(taskDir + ATTACHMENTS_DIR + "/" + fileId + "/" + filename);
 
-								String base64EncFile = Kanboard.downloadTaskFile(session, logger, fileId, debugMode);
-								if (StringUtils.isNotBlank(base64EncFile)) {
-									String filepath = workspace.child(KANBOARD_BASEDIR + File.separator + taskId
-											+ File.separator + ATTACHMENTS_DIR + File.separator + fileId
-											+ File.separator + filename).getRemote();
-									File file = Utils.decodeBase64ToBinaryFile(filepath, base64EncFile);
-									fetchedAttachments.add(file.getCanonicalPath());
+								FilePath cache = KanboardAttachmentCache.getDirectory(workspace);
+								if (cache != null) {
+									long size = KanboardAttachmentCache.get(cache, cacheKey, file);
+									if (size >= 0) {
+										downloadLogger.println(Messages.attachment_cache_hit(filename, size));
+										return new KanboardDownloadStage.Fetched(file.getRemote(), size);
+									}
 								}
 
+								long size = Kanboard.downloadTaskFile(session, downloadLogger, fileId, file, debugMode);
+								if (size <= 0) {
+									// Nothing to fetch, same as an empty content
+									file.delete();
+									return null;
+								}
+
+								if (cache != null) {
+									try {
+										KanboardAttachmentCache.put(cache, cacheKey, file);
+									} catch (IOException e) {
+										downloadLogger
+												.println(Messages.attachment_cache_error(filename, e.getMessage()));
+									}
+								}
+								return new KanboardDownloadStage.Fetched(file.getRemote(), size);
 							}
+						});
 
-						} catch (IOException e) {
+					}
+				}
 
-							logger.println(e.getMessage());
+			}
+		}
 
-						}
-					}
+		private void addDownload(KanboardDownloadStage stage, KanboardDownloadStage.Download download) {
+			stage.add(download);
+			downloads.add(download);
+		}
 
+		/**
+		 * Adds the files fetched by the task downloads to the task, in
+		 * download order, once the download stage has run.
+		 */
+		void addFiles() {
+			for (KanboardDownloadStage.Download download : downloads) {
+				if (download.getPath() != null) {
+					task.files.add(download.getPath());
 				}
+			}
+		}
 
-				// Export task files environment variable
-				String fetchedFilesPathsEnvVar = StringUtils.join(fetchedAttachments, ',');
-				if (StringUtils.isNotBlank(fetchedFilesPathsEnvVar)) {
+		/**
+		 * Writes the task JSON file, once the task files are fetched.
+		 */
+		void writeJSON() throws IOException, InterruptedException {
+			jsonTask.put("attachements", task.files);
+			if (workspace != null) {
+				FilePath taskFile = workspace.child(taskDir + TASK_JSON_FILENAME);
+				taskFile.write(jsonTask.toJSONString(new JSONStyleIdent()), "UTF-8");
+				task.jsonPath = taskFile.getRemote();
+			}
+		}
+	}
 
-					Utils.exportEnvironmentVariable(build, KANBOARD_FILES_ENVVAR, fetchedFilesPathsEnvVar);
-					logger.println(Messages.attachments_envvar_success(fetchedFilesPathsEnvVar, KANBOARD_FILES_ENVVAR));
-				}
+	/**
+	 * Fetched task, with the paths of its fetched links and attachments.
+	 */
+	static final class FetchedTask {
+
+		private final String id;
+		private final String reference;
+		private final String title;
+		private final String url;
+		private String creator;
+		private String owner;
+		private final List<String> files = new ArrayList<String>();
+		private String jsonPath;
+
+		FetchedTask(String id, String reference, String title, String url) {
+			this.id = id;
+			this.reference = reference;
+			this.title = title;
+			this.url = url;
+		}
 
-				jsonTask.put("attachements", fetchedAttachments);
+		String getId() {
+			return id;
+		}
 
-				String taskJSONFilePath = workspace
-						.child(KANBOARD_BASEDIR + File.separator + taskId + File.separator + TASK_JSON_FILENAME)
-						.getRemote();
-				File taskFile = new File(taskJSONFilePath);
-				FileUtils.write(taskFile, jsonTask.toJSONString(new JSONStyleIdent()), "UTF-8");
+		String getReference() {
+			return reference;
+		}
 
-				Utils.exportEnvironmentVariable(build, KANBOARD_TASKJSON_ENVVAR, taskJSONFilePath);
-				logger.println(Messages.taskjson_envvar_success(taskJSONFilePath, KANBOARD_TASKJSON_ENVVAR));
+		String getTitle() {
+			return title;
+		}
 
-			}
+		String getURL() {
+			return url;
+		}
 
-		} catch (JSONRPC2SessionException | IOException | InterruptedException | MacroEvaluationException e) {
+		/**
+		 * @return the creator username, null if unknown
+		 */
+		String getCreator() {
+			return creator;
+		}
 
-			throw new AbortException(e.getMessage());
+		/**
+		 * @return the owner username, null if unknown
+		 */
+		String getOwner() {
+			return owner;
+		}
 
+		/**
+		 * @return paths of the fetched links and attachments
+		 */
+		List<String> getFiles() {
+			return files;
 		}
 
-		return true;
+		/**
+		 * @return path of the task JSON file, null if it wasn't written
+		 */
+		String getJSONPath() {
+			return jsonPath;
+		}
+	}
+
+	/**
+	 * Tasks fetched by a query, with the path of their index file.
+	 */
+	static final class FetchedTasks {
+
+		private final List<FetchedTask> tasks = new ArrayList<FetchedTask>();
+		private String jsonPath;
+
+		/**
+		 * @return the fetched tasks, in query order
+		 */
+		List<FetchedTask> getTasks() {
+			return tasks;
+		}
+
+		/**
+		 * @return path of the index JSON file, null if it wasn't written
+		 */
+		String getJSONPath() {
+			return jsonPath;
+		}
 	}
 
 	@Extension
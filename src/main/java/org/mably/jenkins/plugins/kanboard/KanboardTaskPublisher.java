@@ -4,7 +4,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import javax.inject.Inject;
@@ -17,11 +21,13 @@ import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
 import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
 
 import hudson.AbortException;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
@@ -43,6 +49,8 @@ import net.minidev.json.JSONObject;
  */
 public class KanboardTaskPublisher extends Notifier {
 
+	private static final String ATTACHMENTS_DIR = "kanboard-attachments";
+
 	private final String projectIdentifier;
 	private final String taskReference;
 
@@ -59,6 +67,8 @@ public class KanboardTaskPublisher extends Notifier {
 	private String taskTags;
 	private String taskComment;
 	private String taskSubtaskTitle;
+	private boolean syncTaskFields;
+	private boolean asynchronous;
 
 	@DataBoundConstructor
 	public KanboardTaskPublisher(String projectIdentifier, String taskReference) {
@@ -126,6 +136,14 @@ public class KanboardTaskPublisher extends Notifier {
 		return taskSubtaskTitle;
 	}
 
+	public boolean isSyncTaskFields() {
+		return syncTaskFields;
+	}
+
+	public boolean isAsynchronous() {
+		return asynchronous;
+	}
+
 	@DataBoundSetter
 	public void setSuccessfulBuildOnly(boolean successfulBuildOnly) {
 		this.successfulBuildOnly = successfulBuildOnly;
@@ -191,9 +209,20 @@ public class KanboardTaskPublisher extends Notifier {
 		this.taskSubtaskTitle = taskSubtaskTitle;
 	}
 
+	@DataBoundSetter
+	public void setSyncTaskFields(boolean syncTaskFields) {
+		this.syncTaskFields = syncTaskFields;
+	}
+
+	@DataBoundSetter
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
 	@Override
 	public BuildStepMonitor getRequiredMonitorService() {
-		return BuildStepMonitor.BUILD;
+		// Background publications don't depend on the previous build step
+		return this.asynchronous ? BuildStepMonitor.NONE : BuildStepMonitor.BUILD;
 	}
 
 	@Override
@@ -205,6 +234,9 @@ public class KanboardTaskPublisher extends Notifier {
 	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
 			throws InterruptedException, IOException {
 		if (!this.successfulBuildOnly || Result.SUCCESS.equals(build.getResult())) {
+			if (this.asynchronous) {
+				return this.queueTask(build, listener);
+			}
 			return this.createOrUpdateTask(build, listener);
 		} else {
 			return true;
@@ -215,407 +247,896 @@ public class KanboardTaskPublisher extends Notifier {
 
 		try {
 
-			KanboardGlobalConfiguration config = getDescriptor().getGlobalConfiguration();
-			final boolean debugMode = config.isDebugMode();
-			final PrintStream logger = listener.getLogger();
+			TaskValues values = expandValues(build, listener);
 
-			String projectIdentifierValue = TokenMacro.expandAll(build, listener, this.projectIdentifier);
-			String taskRefValue = TokenMacro.expandAll(build, listener, this.taskReference);
+			PublishedTask task = publishOrDefer(values, build.getWorkspace(), listener.getLogger(), null);
 
-			if (StringUtils.isBlank(projectIdentifierValue) || StringUtils.isBlank(taskRefValue)) {
-				throw new AbortException("Valid project identifier and task reference are required.");
+			// Export task URL environment variable
+			String taskURL = (task == null) ? null : task.getURL();
+			if (StringUtils.isNotBlank(taskURL)) {
+				Utils.exportEnvironmentVariable(build, KanboardPlugin.KANBOARD_TASKURL_ENVVAR, taskURL);
+				listener.getLogger()
+						.println(Messages.taskurl_envvar_success(taskURL, KanboardPlugin.KANBOARD_TASKURL_ENVVAR));
 			}
 
-			String taskColumnValue = TokenMacro.expandAll(build, listener, this.taskColumn);
-			String taskOwnerValue = TokenMacro.expandAll(build, listener, this.taskOwner);
-			String taskCreatorValue = TokenMacro.expandAll(build, listener, this.taskCreator);
-			String taskSwimlaneValue = TokenMacro.expandAll(build, listener, this.taskSwimlane);
-			String taskColorValue = TokenMacro.expandAll(build, listener, this.taskColor);
-			String taskCommentValue = TokenMacro.expandAll(build, listener, this.taskComment);
-			String taskSubtaskTitleValue = TokenMacro.expandAll(build, listener, this.taskSubtaskTitle);
+		} catch (JSONRPC2SessionException | IOException | InterruptedException | MacroEvaluationException e) {
 
-			String[] taskTagsValue = Utils.getCSVStringValue(build, listener, this.taskTags, 2);
+			throw new AbortException(e.getMessage());
 
-			String[] taskAttachmentsValue = Utils.getCSVStringValue(build, listener, this.taskAttachments);
+		}
 
-			String[] taskExternalLinksValue = Utils.getCSVStringValue(build, listener, this.taskExternalLinks);
+		return true;
+	}
 
-			logger.println(Messages.kanboard_publisher_running(Utils.getImplementationVersion(), config.getEndpoint(),
-					projectIdentifierValue, taskRefValue));
+	/**
+	 * Hands the task publication over to the background publisher, the build
+	 * step being done at once. The attachments are copied to the build
+	 * directory beforehand, the workspace being possibly changed by the next
+	 * steps or builds while the publication is pending. The publication
+	 * outcome is shown by a build action, the task URL can't be exported to
+	 * the build environment.
+	 */
+	public boolean queueTask(AbstractBuild<?, ?> build, TaskListener listener) throws AbortException {
 
-			JSONRPC2Session session = Utils.initJSONRPCSession(config.getEndpoint(), config.getApiToken(),
-					config.getApiTokenCredentialId());
+		try {
 
-			// String version = Kanboard.getVersion(session, null, false);
+			TaskValues values = expandValues(build, listener);
 
-			JSONObject jsonProject = Kanboard.getProjectByIdentifier(session, logger, projectIdentifierValue,
-					debugMode);
-			if (jsonProject == null) {
-				throw new AbortException(Messages.project_not_found(projectIdentifierValue));
+			File attachmentsDir = null;
+			if (ArrayUtils.isNotEmpty(values.taskAttachments)) {
+				FilePath workspace = build.getWorkspace();
+				if (workspace == null) {
+					throw new AbortException(Messages.workspace_not_found());
+				}
+				attachmentsDir = new File(build.getRootDir(), ATTACHMENTS_DIR + "/" + UUID.randomUUID());
+				values.taskAttachments = KanboardAttachments.stage(workspace, values.taskAttachments,
+						new FilePath(attachmentsDir), getDescriptor().getGlobalConfiguration().getAttachmentMaxSize(),
+						listener.getLogger());
 			}
-			Object projectId = jsonProject.get(Kanboard.ID);
 
-			JSONArray projectColumns = Kanboard.getProjectColumns(session, logger, projectId, debugMode);
+			KanboardPublisherAction action = new KanboardPublisherAction(values.projectIdentifier,
+					values.taskReference);
+			build.addAction(action);
+			KanboardBackgroundPublisher.submit(this, values, attachmentsDir, action);
+			listener.getLogger().println(Messages.publisher_queued(values.taskReference));
 
-			JSONObject jsonTask = Kanboard.getTaskByReference(session, logger, projectId, taskRefValue, debugMode);
+		} catch (IOException | InterruptedException | MacroEvaluationException e) {
 
-			Object taskId;
-			Object ownerId;
-			Object columnId;
-			Integer colPosition;
-			Object swimlaneId;
-			String taskURL;
-			if (jsonTask == null) {
-				taskId = null;
-				ownerId = null;
-				columnId = null;
-				colPosition = 0; // required by newColPosition calculation
-				swimlaneId = null;
-				taskURL = null;
-			} else {
-				taskId = jsonTask.get(Kanboard.ID);
-				ownerId = jsonTask.get(Kanboard.OWNER_ID);
-				columnId = jsonTask.get(Kanboard.COLUMN_ID);
-				colPosition = Kanboard.getColPositionFromColumnId(columnId, projectColumns);
-				swimlaneId = jsonTask.get(Kanboard.SWIMLANE_ID);
-				taskURL = String.valueOf(jsonTask.get(Kanboard.URL));
+			throw new AbortException(e.getMessage());
+
+		}
+
+		return true;
+	}
+
+	/**
+	 * Publishes the task, or journals it in the outbox to be replayed later if
+	 * Kanboard is unreachable or if earlier publications of the task are still
+	 * pending. A publication failing midway is journaled without the parts
+	 * already applied, so that its comment for instance isn't added twice.
+	 *
+	 * @return the published task, null if the publication has been journaled
+	 */
+	PublishedTask publishOrDefer(TaskValues values, FilePath workspace, PrintStream logger,
+			KanboardSession.OperationRecorder recorder)
+			throws JSONRPC2SessionException, IOException, InterruptedException {
+
+		if (!KanboardOutbox.isEnabled()) {
+			return publishTask(values, workspace, logger, recorder);
+		}
+
+		KanboardOutbox outbox = KanboardOutbox.get();
+		String endpoint = getDescriptor().getGlobalConfiguration().getEndpoint();
+		if (outbox.hasPending(endpoint, values)) {
+			outbox.add(endpoint, this.syncTaskFields, workspace, values, logger);
+			logger.println(Messages.outbox_queued_behind(values.taskReference));
+			return null;
+		}
+
+		try {
+			return publishTask(values, workspace, logger, recorder);
+		} catch (JSONRPC2SessionException e) {
+			if (KanboardOutbox.isInterrupted(e)) {
+				// Aborted, the publication is not to be replayed later
+				throw KanboardOutbox.toInterruptedException(e);
 			}
+			if (!KanboardOutbox.isTransient(e)) {
+				throw e;
+			}
+			logger.println(e.getMessage());
+			outbox.add(endpoint, this.syncTaskFields, workspace, values, logger);
+			logger.println(Messages.outbox_journaled(values.taskReference));
+			return null;
+		}
+	}
+
+	/**
+	 * Expands the publisher fields for the given build, so that the task can
+	 * be published without the build.
+	 */
+	TaskValues expandValues(AbstractBuild<?, ?> build, TaskListener listener)
+			throws MacroEvaluationException, IOException, InterruptedException {
+
+		TaskValues values = new TaskValues();
+
+		values.projectIdentifier = TokenMacro.expandAll(build, listener, this.projectIdentifier);
+		values.taskReference = TokenMacro.expandAll(build, listener, this.taskReference);
+
+		if (StringUtils.isBlank(values.projectIdentifier) || StringUtils.isBlank(values.taskReference)) {
+			throw new AbortException("Valid project identifier and task reference are required.");
+		}
+
+		values.taskTitle = TokenMacro.expandAll(build, listener, this.taskTitle);
+		values.taskDescription = TokenMacro.expandAll(build, listener, this.taskDescription);
+		values.taskColumn = TokenMacro.expandAll(build, listener, this.taskColumn);
+		values.taskOwner = TokenMacro.expandAll(build, listener, this.taskOwner);
+		values.taskCreator = TokenMacro.expandAll(build, listener, this.taskCreator);
+		values.taskSwimlane = TokenMacro.expandAll(build, listener, this.taskSwimlane);
+		values.taskColor = TokenMacro.expandAll(build, listener, this.taskColor);
+		values.taskComment = TokenMacro.expandAll(build, listener, this.taskComment);
+		values.taskSubtaskTitle = TokenMacro.expandAll(build, listener, this.taskSubtaskTitle);
+
+		values.taskTags = Utils.getCSVStringValue(build, listener, this.taskTags, 2);
+
+		values.taskAttachments = Utils.getCSVStringValue(build, listener, this.taskAttachments);
+
+		values.taskExternalLinks = Utils.getCSVStringValue(build, listener, this.taskExternalLinks);
+
+		return values;
+	}
+
+	/**
+	 * Creates or updates the task, once the publications of the same task by
+	 * concurrent builds are done.
+	 *
+	 * @param workspace
+	 *            workspace holding the attachments, may be null if there are
+	 *            none
+	 * @param recorder
+	 *            recorder of the Kanboard API requests, may be null
+	 * @return the published task, the applied parts of the publication being
+	 *         removed from the values as they are applied
+	 */
+	PublishedTask publishTask(final TaskValues values, final FilePath workspace, final PrintStream logger,
+			final KanboardSession.OperationRecorder recorder)
+			throws JSONRPC2SessionException, IOException, InterruptedException {
+		String endpoint = getDescriptor().getGlobalConfiguration().getEndpoint();
+		return KanboardTaskCoalescer.publish(endpoint, values, logger, new KanboardTaskCoalescer.Publication() {
+			@Override
+			public PublishedTask publish() throws JSONRPC2SessionException, IOException, InterruptedException {
+				return doPublishTask(values, workspace, logger, recorder);
+			}
+		});
+	}
+
+	private PublishedTask doPublishTask(final TaskValues values, FilePath workspace, final PrintStream logger,
+			KanboardSession.OperationRecorder recorder)
+			throws JSONRPC2SessionException, IOException, InterruptedException {
+
+		final KanboardGlobalConfiguration config = getDescriptor().getGlobalConfiguration();
+		final boolean debugMode = config.isDebugMode();
+
+		String projectIdentifierValue = values.projectIdentifier;
+		final String taskRefValue = values.taskReference;
+		String taskTitleValue = values.taskTitle;
+		String taskDescValue = values.taskDescription;
+		String taskColumnValue = values.taskColumn;
+		String taskOwnerValue = values.taskOwner;
+		String taskCreatorValue = values.taskCreator;
+		String taskSwimlaneValue = values.taskSwimlane;
+		String taskColorValue = values.taskColor;
+		String taskCommentValue = values.taskComment;
+		String taskSubtaskTitleValue = values.taskSubtaskTitle;
+		String[] taskTagsValue = values.taskTags;
+		String[] taskAttachmentsValue = values.taskAttachments;
+		String[] taskExternalLinksValue = values.taskExternalLinks;
+
+		logger.println(Messages.kanboard_publisher_running(Utils.getImplementationVersion(), config.getEndpoint(),
+				projectIdentifierValue, taskRefValue));
+
+		final JSONRPC2Session session = Utils.initJSONRPCSession(config.getEndpoint(), config.getApiToken(),
+				config.getApiTokenCredentialId(), logger);
+		if ((recorder != null) && (session instanceof KanboardSession)) {
+			((KanboardSession) session).setOperationRecorder(recorder);
+		}
+
+		// String version = Kanboard.getVersion(session, null, false);
+
+		JSONObject jsonProject = KanboardMetadataCache.getProjectByIdentifier(session, logger,
+				projectIdentifierValue, debugMode);
+		if (jsonProject == null) {
+			throw new AbortException(Messages.project_not_found(projectIdentifierValue));
+		}
+		final Object projectId = jsonProject.get(Kanboard.ID);
+
+		// Fetch columns and users (unless cached) and task in a single
+		// batch request
+		JSONArray projectColumns = KanboardMetadataCache.getCachedProjectColumns(session, projectId);
+		boolean cachedColumns = (projectColumns != null);
+		KanboardBatch batch = new KanboardBatch();
+		KanboardBatch.Call<JSONArray> columnsCall = null;
+		if (!cachedColumns) {
+			columnsCall = Kanboard.getProjectColumns(batch, projectId);
+		}
+		KanboardBatch.Call<JSONObject> taskCall = Kanboard.getTaskByReference(batch, projectId, taskRefValue);
+		KanboardUserCache.Lookup creatorLookup = null;
+		if (StringUtils.isNotEmpty(taskCreatorValue)) {
+			creatorLookup = KanboardUserCache.getUserIdByName(batch, session, taskCreatorValue);
+		}
+		KanboardUserCache.Lookup ownerLookup = null;
+		if (StringUtils.isNotEmpty(taskOwnerValue) && !taskOwnerValue.equals(taskCreatorValue)) {
+			ownerLookup = KanboardUserCache.getUserIdByName(batch, session, taskOwnerValue);
+		}
+		batch.send(session, logger, debugMode);
+
+		if (columnsCall != null) {
+			projectColumns = columnsCall.get();
+			KanboardMetadataCache.putProjectColumns(session, projectId, projectColumns);
+		}
+
+		JSONObject jsonTask = taskCall.get();
+
+		// Unknown task column, cached columns are outdated
+		if (cachedColumns && (jsonTask != null)
+				&& (Kanboard.getColPositionFromColumnId(jsonTask.get(Kanboard.COLUMN_ID), projectColumns) == 0)) {
+			projectColumns = refreshProjectColumns(session, logger, projectId, debugMode);
+			cachedColumns = false;
+		}
+
+		Object taskId;
+		Object ownerId;
+		Object columnId;
+		Integer colPosition;
+		Object swimlaneId;
+		String taskURL;
+		if (jsonTask == null) {
+			taskId = null;
+			ownerId = null;
+			columnId = null;
+			colPosition = 0; // required by newColPosition calculation
+			swimlaneId = null;
+			taskURL = null;
+		} else {
+			taskId = jsonTask.get(Kanboard.ID);
+			ownerId = jsonTask.get(Kanboard.OWNER_ID);
+			columnId = jsonTask.get(Kanboard.COLUMN_ID);
+			colPosition = Kanboard.getColPositionFromColumnId(columnId, projectColumns);
+			swimlaneId = jsonTask.get(Kanboard.SWIMLANE_ID);
+			taskURL = String.valueOf(jsonTask.get(Kanboard.URL));
+		}
 
-			boolean columnChanged = false;
-			Object newColumnId = null;
-			Integer newColPosition = null;
-			if (StringUtils.isNotEmpty(taskColumnValue) && Utils.isInteger(taskColumnValue)) {
+		boolean columnChanged = false;
+		Object newColumnId = null;
+		Integer newColPosition = null;
+		if (StringUtils.isNotEmpty(taskColumnValue) && Utils.isInteger(taskColumnValue)) {
 
-				int columnNum = Integer.parseInt(taskColumnValue);
+			int columnNum = Integer.parseInt(taskColumnValue);
+
+			if (columnNum != 0) {
+
+				if (taskColumnValue.startsWith("+") || taskColumnValue.startsWith("-")) {
+					newColPosition = Math.min(colPosition + columnNum, projectColumns.size());
+				} else {
+					newColPosition = Math.min(columnNum, projectColumns.size());
+				}
+				newColPosition = Math.max(newColPosition, 1);
 
-				if (columnNum != 0) {
+				newColumnId = Kanboard.getColumnIdFromColPosition(newColPosition, projectColumns);
 
+				// Unknown column position, cached columns are outdated
+				if (cachedColumns && (newColumnId == null)) {
+					projectColumns = refreshProjectColumns(session, logger, projectId, debugMode);
+					cachedColumns = false;
+					colPosition = (jsonTask == null) ? 0
+							: Kanboard.getColPositionFromColumnId(columnId, projectColumns);
 					if (taskColumnValue.startsWith("+") || taskColumnValue.startsWith("-")) {
 						newColPosition = Math.min(colPosition + columnNum, projectColumns.size());
 					} else {
 						newColPosition = Math.min(columnNum, projectColumns.size());
 					}
 					newColPosition = Math.max(newColPosition, 1);
-
 					newColumnId = Kanboard.getColumnIdFromColPosition(newColPosition, projectColumns);
-
-					columnChanged = ObjectUtils.notEqual(columnId, newColumnId);
 				}
+
+				columnChanged = ObjectUtils.notEqual(columnId, newColumnId);
 			}
+		}
 
-			boolean swimlaneChanged = false;
-			String newSwimlaneId = null;
-			if (StringUtils.isNotEmpty(taskSwimlaneValue) && Utils.isInteger(taskSwimlaneValue)) {
+		boolean swimlaneChanged = false;
+		String newSwimlaneId = null;
+		if (StringUtils.isNotEmpty(taskSwimlaneValue) && Utils.isInteger(taskSwimlaneValue)) {
 
-				int columnNum = Integer.parseInt(taskSwimlaneValue);
+			int columnNum = Integer.parseInt(taskSwimlaneValue);
 
-				if (columnNum != 0) {
+			if (columnNum != 0) {
 
-					// TODO idem columns?
+				// TODO idem columns?
 
-					newSwimlaneId = taskSwimlaneValue;
+				newSwimlaneId = taskSwimlaneValue;
 
-					swimlaneChanged = ObjectUtils.notEqual(swimlaneId, newSwimlaneId);
-				}
+				swimlaneChanged = ObjectUtils.notEqual(swimlaneId, newSwimlaneId);
 			}
+		}
 
-			Object creatorId = null;
-			if (StringUtils.isNotEmpty(taskCreatorValue)) {
-				JSONObject jsonCreator = Kanboard.getUserByName(session, logger, taskCreatorValue, debugMode);
-				if (jsonCreator != null) {
-					creatorId = jsonCreator.get(Kanboard.ID);
-				}
-			}
+		Object creatorId = null;
+		if (creatorLookup != null) {
+			creatorId = creatorLookup.get();
+		}
 
-			boolean ownerChanged = false;
-			Object newOwnerId = null;
-			if (StringUtils.isNotEmpty(taskOwnerValue)) {
-				if ((creatorId != null) && (taskOwnerValue.equals(taskCreatorValue))) {
-					newOwnerId = creatorId;
-				} else {
-					JSONObject jsonOwner = Kanboard.getUserByName(session, logger, taskOwnerValue, debugMode);
-					if (jsonOwner != null) {
-						newOwnerId = jsonOwner.get(Kanboard.ID);
-					}
-				}
-				ownerChanged = (newOwnerId != null) && ObjectUtils.notEqual(ownerId, newOwnerId);
+		Object newOwnerId = null;
+		if (StringUtils.isNotEmpty(taskOwnerValue)) {
+			if (ownerLookup == null) {
+				newOwnerId = creatorId;
+			} else {
+				newOwnerId = ownerLookup.get();
 			}
+		}
 
-			String[] newTaskTags = null;
-			boolean tagsChanged = false;
+		// Fetch existing task tags, files, links and subtasks in a single
+		// batch request
+		KanboardBatch.Call<JSONObject> tagsCall = null;
+		TaskListings listings = null;
+		if (taskId != null) {
+			KanboardBatch detailsBatch = new KanboardBatch();
 			if (ArrayUtils.isNotEmpty(taskTagsValue)) {
+				tagsCall = Kanboard.getTaskTags(detailsBatch, taskId);
+			}
+			listings = new TaskListings(detailsBatch, taskId, taskAttachmentsValue, taskExternalLinksValue,
+					taskSubtaskTitleValue);
+			detailsBatch.send(session, logger, debugMode);
+		}
+
+		String[] taskTags = null;
+		String[] newTaskTags = null;
+		if (ArrayUtils.isNotEmpty(taskTagsValue)) {
 
-				JSONObject jsonTags;
-				if (taskId == null) {
+			JSONObject jsonTags;
+			if (tagsCall == null) {
+				jsonTags = null;
+			} else {
+				try {
+					jsonTags = tagsCall.get();
+				} catch (Exception e) {
 					jsonTags = null;
-				} else {
-					try {
-						jsonTags = Kanboard.getTaskTags(session, logger, taskId, debugMode);
-					} catch (Exception e) {
-						jsonTags = null;
-						logger.println(e.getMessage());
-					}
+					logger.println(e.getMessage());
 				}
+			}
 
-				String[] taskTags = null;
-				if (jsonTags != null) {
-					taskTags = new String[jsonTags.size()];
-					int i = 0;
-					for (Object jsonTag : jsonTags.values()) {
-						taskTags[i] = String.valueOf(jsonTag);
-						i++;
-					}
+			if (jsonTags != null) {
+				taskTags = new String[jsonTags.size()];
+				int i = 0;
+				for (Object jsonTag : jsonTags.values()) {
+					taskTags[i] = String.valueOf(jsonTag);
+					i++;
 				}
+			}
 
-				if (ArrayUtils.isNotEmpty(taskTags)) {
-					newTaskTags = (String[]) ArrayUtils.clone(taskTags);
-				} else {
-					newTaskTags = new String[0];
-				}
-				for (int i = 0; i < taskTagsValue.length; i++) {
-					String tagValue = taskTagsValue[i];
-					if (StringUtils.isNotEmpty(tagValue)) {
-						boolean removeTag = (tagValue.charAt(0) == '-');
-						String tag = tagValue.replaceFirst("[\\+\\-]*([\\w\\-]*)", "$1");
-						if (ArrayUtils.contains(newTaskTags, tag)) {
-							if (removeTag) {
-								newTaskTags = (String[]) ArrayUtils.removeElement(newTaskTags, tag);
-							}
-						} else {
-							if (!removeTag) {
-								newTaskTags = (String[]) ArrayUtils.add(newTaskTags, tag);
-							}
+			if (ArrayUtils.isNotEmpty(taskTags)) {
+				newTaskTags = (String[]) ArrayUtils.clone(taskTags);
+			} else {
+				newTaskTags = new String[0];
+			}
+			for (int i = 0; i < taskTagsValue.length; i++) {
+				String tagValue = taskTagsValue[i];
+				if (StringUtils.isNotEmpty(tagValue)) {
+					boolean removeTag = (tagValue.charAt(0) == '-');
+					String tag = tagValue.replaceFirst("[\\+\\-]*([\\w\\-]*)", "$1");
+					if (ArrayUtils.contains(newTaskTags, tag)) {
+						if (removeTag) {
+							newTaskTags = (String[]) ArrayUtils.removeElement(newTaskTags, tag);
+						}
+					} else {
+						if (!removeTag) {
+							newTaskTags = (String[]) ArrayUtils.add(newTaskTags, tag);
 						}
 					}
 				}
-				tagsChanged = !ArrayUtils.isEquals(taskTags, newTaskTags);
 			}
+		}
 
-			boolean newTask = (taskId == null);
-			if (newTask) {
+		boolean newTask = (taskId == null);
 
-				String taskTitleValue = TokenMacro.expandAll(build, listener, this.taskTitle);
-				String taskDescValue = TokenMacro.expandAll(build, listener, this.taskDescription);
+		if (newTask) {
 
-				Object createResult = Kanboard.createTask(session, logger, projectId, taskRefValue, creatorId,
-						((newOwnerId == null) ? creatorId : newOwnerId), taskTitleValue, taskDescValue, newColumnId,
-						newSwimlaneId, taskColorValue, newTaskTags, debugMode);
+			Object createResult = Kanboard.createTask(session, logger, projectId, taskRefValue, creatorId,
+					((newOwnerId == null) ? creatorId : newOwnerId), taskTitleValue, taskDescValue, newColumnId,
+					newSwimlaneId, taskColorValue, newTaskTags, debugMode);
 
-				if (createResult.equals(Boolean.FALSE)) {
-					throw new AbortException(Messages.task_create_error(taskRefValue));
-				} else {
-					taskId = String.valueOf(createResult);
-				}
+			if (createResult.equals(Boolean.FALSE)) {
+				throw new AbortException(Messages.task_create_error(taskRefValue));
+			} else {
+				taskId = String.valueOf(createResult);
+			}
 
-				jsonTask = Kanboard.getTask(session, logger, taskId, debugMode);
+			KanboardBatch detailsBatch = new KanboardBatch();
+			KanboardBatch.Call<JSONObject> newTaskCall = Kanboard.getTask(detailsBatch, taskId);
+			listings = new TaskListings(detailsBatch, taskId, taskAttachmentsValue, taskExternalLinksValue,
+					taskSubtaskTitleValue);
+			detailsBatch.send(session, logger, debugMode);
 
-				if (jsonTask == null) {
-					throw new AbortException(Messages.task_fetch_error(taskId));
-				} else {
-					ownerId = jsonTask.get(Kanboard.OWNER_ID);
-					columnId = jsonTask.get(Kanboard.COLUMN_ID);
+			jsonTask = newTaskCall.get();
+
+			if (jsonTask == null) {
+				throw new AbortException(Messages.task_fetch_error(taskId));
+			} else {
+				ownerId = jsonTask.get(Kanboard.OWNER_ID);
+				columnId = jsonTask.get(Kanboard.COLUMN_ID);
+				colPosition = Kanboard.getColPositionFromColumnId(columnId, projectColumns);
+				if (cachedColumns && (colPosition == 0)) {
+					projectColumns = refreshProjectColumns(session, logger, projectId, debugMode);
 					colPosition = Kanboard.getColPositionFromColumnId(columnId, projectColumns);
-					swimlaneId = jsonTask.get(Kanboard.SWIMLANE_ID);
-					taskURL = String.valueOf(jsonTask.get(Kanboard.URL));
 				}
-
+				swimlaneId = jsonTask.get(Kanboard.SWIMLANE_ID);
+				taskURL = String.valueOf(jsonTask.get(Kanboard.URL));
 			}
 
-			if (!newTask && (ownerChanged || tagsChanged)) {
+		}
 
-				Object taskOwnerId = (ownerChanged) ? newOwnerId : ownerId;
-				if (Kanboard.updateTask(session, logger, taskId, taskOwnerId, newTaskTags, debugMode)) {
-					logger.println(Messages.task_owner_updated(taskRefValue, taskOwnerValue));
-				}
+		if (!newTask) {
 
+			// Only the fields which differ from the fetched task are sent
+			KanboardTaskReconciler reconciler = new KanboardTaskReconciler(projectId, jsonTask);
+			if (this.syncTaskFields) {
+				reconciler.setField(Kanboard.TITLE, StringUtils.isBlank(taskTitleValue) ? null : taskTitleValue);
+				reconciler.setField(Kanboard.DESCRIPTION,
+						StringUtils.isBlank(taskDescValue) ? null : taskDescValue);
+				reconciler.setField(Kanboard.COLOR_ID, StringUtils.isBlank(taskColorValue) ? null : taskColorValue);
 			}
-
-			if (!newTask && (columnChanged || swimlaneChanged)) {
-
-				if (Kanboard.moveTaskPosition(session, logger, projectId, taskId,
-						(newColumnId == null) ? columnId : newColumnId,
+			reconciler.setField(Kanboard.OWNER_ID, newOwnerId);
+			reconciler.setTags(taskTags, newTaskTags);
+			if ((newColumnId != null) || (newSwimlaneId != null)) {
+				reconciler.setPosition((newColumnId == null) ? columnId : newColumnId,
 						(newColPosition == null) ? colPosition : newColPosition,
-						(newSwimlaneId == null) ? swimlaneId : newSwimlaneId,
-						debugMode)) {
-					logger.println(Messages.task_position_move(taskRefValue, newColPosition));
-				}
+						(newSwimlaneId == null) ? swimlaneId : newSwimlaneId, columnChanged || swimlaneChanged);
+			}
+			reconciler.send(session, logger, debugMode);
 
+			if (reconciler.isChanged(Kanboard.OWNER_ID)) {
+				logger.println(Messages.task_owner_updated(taskRefValue, taskOwnerValue));
 			}
+			if (reconciler.isMoved()) {
+				logger.println(Messages.task_position_move(taskRefValue, newColPosition));
+			}
+			logger.println(Messages.task_reconciled(taskRefValue, reconciler.getChangedFields(),
+					reconciler.getSentRequests(), reconciler.getSavedRequests()));
+
+		}
 
-			if (ArrayUtils.isNotEmpty(taskAttachmentsValue)) {
+		// A relative move would otherwise be applied again on replay
+		values.removeRelativeMove();
 
-				JSONArray jsonFiles = Kanboard.getAllTaskFiles(session, logger, taskId, debugMode);
+		// Attachments and links are uploaded a few at a time, each one
+		// logging to its own buffer written to the build log in order
+		KanboardUploadStage uploads = new KanboardUploadStage(logger);
+		final Object uploadTaskId = taskId;
+		final Object uploadCreatorId = creatorId;
+		final AtomicInteger skippedFiles = new AtomicInteger();
+		final AtomicLong skippedBytes = new AtomicLong();
+		final KanboardAttachmentDigests digests = KanboardAttachmentDigests.get();
 
-				Map<String, JSONObject> existingFiles = new HashMap<String, JSONObject>();
+		if (ArrayUtils.isNotEmpty(taskAttachmentsValue)) {
 
-				if (jsonFiles != null) {
-					for (int i = 0; i < jsonFiles.size(); i++) {
-						JSONObject jsonFile = (JSONObject) jsonFiles.get(i);
-						String name = String.valueOf(jsonFile.get(Kanboard.NAME));
-						existingFiles.put(name, jsonFile);
-					}
+			JSONArray jsonFiles = listings.files.get();
+
+			final Map<String, JSONObject> existingFiles = new HashMap<String, JSONObject>();
+
+			if (jsonFiles != null) {
+				for (int i = 0; i < jsonFiles.size(); i++) {
+					JSONObject jsonFile = (JSONObject) jsonFiles.get(i);
+					String name = String.valueOf(jsonFile.get(Kanboard.NAME));
+					existingFiles.put(name, jsonFile);
 				}
+			}
 
-				for (int i = 0; i < taskAttachmentsValue.length; i++) {
+			// Attachments paths are relative to the workspace, which may be
+			// on an agent
+			if (workspace == null) {
+				throw new AbortException(Messages.workspace_not_found());
+			}
 
-					String path = taskAttachmentsValue[i];
+			for (int i = 0; i < taskAttachmentsValue.length; i++) {
 
-					try {
+				final String path = taskAttachmentsValue[i];
 
-						File file = new File(path);
-						if (!file.exists()) {
-							logger.println(Messages.attachment_file_not_found(file.getCanonicalPath()));
-							continue;
-						}
-						if ((config.getAttachmentMaxSize() != 0) && (file.length() > config.getAttachmentMaxSize())) {
-							logger.println(Messages.attachment_file_too_big(file.getCanonicalPath(), file.length(),
-									config.getAttachmentMaxSize()));
-							continue;
+				List<FilePath> files = KanboardAttachments.resolve(workspace, path);
+				if (files.isEmpty()) {
+					uploads.add(new KanboardUploadStage.Upload() {
+						@Override
+						void run(PrintStream logger) {
+							logger.println(Messages.attachment_pattern_no_match(path));
+							values.removeAttachment(path);
 						}
+					});
+					continue;
+				}
 
-						String filename = file.getName();
+				// The pattern is applied once all its files are done
+				final AtomicInteger pendingFiles = new AtomicInteger(files.size());
 
-						if (existingFiles.containsKey(filename)) {
+				for (final FilePath file : files) {
 
-							JSONObject jsonFile = existingFiles.get(filename);
-							Object fileId = jsonFile.get(Kanboard.ID);
+					uploads.add(new KanboardUploadStage.Upload() {
+						@Override
+						void run(PrintStream logger)
+								throws JSONRPC2SessionException, IOException, InterruptedException {
+							upload(logger);
+							if (pendingFiles.decrementAndGet() == 0) {
+								values.removeAttachment(path);
+							}
+						}
 
-							if (Kanboard.removeTaskFile(session, logger, fileId, debugMode)) {
-								logger.println(Messages.attachment_remove_sucess(filename, taskRefValue));
+						private void upload(PrintStream logger)
+								throws JSONRPC2SessionException, IOException, InterruptedException {
+
+							if (!file.exists()) {
+								logger.println(Messages.attachment_file_not_found(file.getRemote()));
+								return;
+							}
+							long length = file.length();
+							if ((config.getAttachmentMaxSize() != 0) && (length > config.getAttachmentMaxSize())) {
+								logger.println(Messages.attachment_file_too_big(file.getRemote(), length,
+										config.getAttachmentMaxSize()));
+								return;
 							}
 
-						}
+							String filename = file.getName();
+							// Computed once on the node holding the file, to
+							// be compared and then remembered
+							String digest = file.digest();
 
-						String encodedFile = Utils.encodeFileToBase64Binary(file);
+							if (existingFiles.containsKey(filename)) {
 
-						if (Kanboard.createTaskFile(session, logger, projectId,
-								taskId, filename, encodedFile, creatorId, debugMode)) {
-							logger.println(Messages.attachment_create_sucess(path, taskRefValue));
-						}
+								JSONObject jsonFile = existingFiles.get(filename);
+								Object fileId = jsonFile.get(Kanboard.ID);
 
-					} catch (IOException e) {
+								if (digests.isUnchanged(session.getURL(), uploadTaskId, filename, jsonFile, length,
+										digest)) {
+									logger.println(Messages.attachment_unchanged(file.getRemote(), taskRefValue));
+									skippedFiles.incrementAndGet();
+									skippedBytes.addAndGet(length);
+									return;
+								}
 
-						logger.println(e.getMessage());
+								if (Kanboard.removeTaskFile(session, logger, fileId, debugMode)) {
+									logger.println(Messages.attachment_remove_sucess(filename, taskRefValue));
+								}
 
-					}
-				}
+							}
+
+							Object newFileId = Kanboard.createTaskFile(session, logger, projectId, uploadTaskId,
+									filename, file, length, uploadCreatorId, debugMode);
+							if (!Boolean.FALSE.equals(newFileId)) {
+								logger.println(Messages.attachment_create_sucess(file.getRemote(), taskRefValue));
+								digests.put(session.getURL(), uploadTaskId, filename, newFileId, length, digest);
+							}
 
+						}
+					});
+				}
 			}
 
-			if (ArrayUtils.isNotEmpty(taskExternalLinksValue)) {
+		}
 
-				JSONArray jsonLinks = Kanboard.getAllExternalTaskLinks(session, logger, taskId, debugMode);
+		if (ArrayUtils.isNotEmpty(taskExternalLinksValue)) {
 
-				Map<String, JSONObject> existingLinks = new HashMap<String, JSONObject>();
+			JSONArray jsonLinks = listings.links.get();
 
-				if (jsonLinks != null) {
-					for (int i = 0; i < jsonLinks.size(); i++) {
-						JSONObject jsonLink = (JSONObject) jsonLinks.get(i);
-						String url = String.valueOf(jsonLink.get(Kanboard.URL));
-						existingLinks.put(url, jsonLink);
-					}
+			Map<String, JSONObject> existingLinks = new HashMap<String, JSONObject>();
+
+			if (jsonLinks != null) {
+				for (int i = 0; i < jsonLinks.size(); i++) {
+					JSONObject jsonLink = (JSONObject) jsonLinks.get(i);
+					String url = String.valueOf(jsonLink.get(Kanboard.URL));
+					existingLinks.put(url, jsonLink);
 				}
+			}
 
-				for (int i = 0; i < taskExternalLinksValue.length; i++) {
+			for (int i = 0; i < taskExternalLinksValue.length; i++) {
 
-					String[] linkItems = taskExternalLinksValue[i].split(Pattern.quote("|"));
+				String[] linkItems = taskExternalLinksValue[i].split(Pattern.quote("|"));
 
-					String url = linkItems[0];
+				final String link = taskExternalLinksValue[i];
+				final String url = linkItems[0];
 
-					if (existingLinks.containsKey(url)) {
-						continue; // Don't create already existing links
-					}
+				if (existingLinks.containsKey(url)) {
+					continue; // Don't create already existing links
+				}
 
-					String title = null;
-					String type = null;
-					if (linkItems.length >= 2) {
-						if (ArrayUtils.contains(Kanboard.LINKTYPES, linkItems[1])) {
-							type = linkItems[1];
-						}
-						if (linkItems.length >= 3) {
-							title = linkItems[2];
-						}
+				String title = null;
+				String type = null;
+				if (linkItems.length >= 2) {
+					if (ArrayUtils.contains(Kanboard.LINKTYPES, linkItems[1])) {
+						type = linkItems[1];
 					}
+					if (linkItems.length >= 3) {
+						title = linkItems[2];
+					}
+				}
 
-					try {
+				final String linkTitle = title;
+				final String linkType = type;
 
-						if (Kanboard.createExternalTaskLink(session, logger, taskId, url, title, type,
-								creatorId, debugMode)) {
+				uploads.add(new KanboardUploadStage.Upload() {
+					@Override
+					void run(PrintStream logger) throws JSONRPC2SessionException, IOException {
+
+						if (Kanboard.createExternalTaskLink(session, logger, uploadTaskId, url, linkTitle,
+								linkType, uploadCreatorId, debugMode)) {
 							logger.println(Messages.external_link_create_success(url, taskRefValue));
 						}
+						values.removeExternalLink(link);
+
+					}
+				});
+			}
 
-					} catch (IOException e) {
+		}
 
-						logger.println(e.getMessage());
+		boolean createSubtask = false;
+		if (StringUtils.isNotBlank(taskSubtaskTitleValue)) {
 
-					}
+			Object jsonSubtasksResult = listings.subtasks.get();
+
+			Map<String, JSONObject> existingSubtasks = new HashMap<String, JSONObject>();
+
+			if (jsonSubtasksResult instanceof JSONArray) {
+				JSONArray jsonSubtasks = (JSONArray) jsonSubtasksResult;
+				for (int i = 0; i < jsonSubtasks.size(); i++) {
+					JSONObject jsonSubtask = (JSONObject) jsonSubtasks.get(i);
+					String title = String.valueOf(jsonSubtask.get(Kanboard.TITLE));
+					String userId = String.valueOf(jsonSubtask.get(Kanboard.USER_ID));
+					String key = title + "|" + userId;
+					existingSubtasks.put(key, jsonSubtask);
 				}
+			}
+
+			String key = taskSubtaskTitleValue + "|" + ownerId;
+
+			createSubtask = !existingSubtasks.containsKey(key);
+
+		}
+
+		// Comment and subtask creations don't depend on attachments and
+		// links, they are sent while those are being uploaded, once nothing
+		// else can fail before the uploads
+		KanboardAsyncClient asyncClient = new KanboardAsyncClient(session, logger, debugMode);
+
+		ListenableFuture<Object> commentFuture = null;
+		if (StringUtils.isNotBlank(taskCommentValue)) {
+			commentFuture = asyncClient.createComment(taskId, creatorId, taskCommentValue);
+		}
 
+		ListenableFuture<Object> subtaskFuture = null;
+		if (createSubtask) {
+			subtaskFuture = asyncClient.createSubtask(taskId, ownerId, taskSubtaskTitleValue);
+		}
+
+		try {
+			uploads.run();
+		} finally {
+			// Once per publication, including the uploads done before a
+			// failure
+			digests.save();
+			// A failed upload isn't reported before the comment and subtask
+			// creations are done, whether they were applied being known
+			KanboardAsyncClient.awaitAll(commentFuture, subtaskFuture);
+			if (KanboardAsyncClient.isSuccessful(commentFuture)) {
+				values.removeComment();
+			}
+			if (KanboardAsyncClient.isSuccessful(subtaskFuture)) {
+				values.removeSubtask();
 			}
+		}
 
-			if (StringUtils.isNotBlank(taskCommentValue)) {
+		if (skippedFiles.get() > 0) {
+			logger.println(Messages.attachments_unchanged(skippedFiles.get(), skippedBytes.get()));
+		}
 
-				Object createResult = Kanboard.createComment(session, logger, taskId, creatorId,
-						taskCommentValue, debugMode);
-				if (!createResult.equals(Boolean.FALSE)) {
-					logger.println(Messages.comment_create_sucess(taskCommentValue, createResult, taskRefValue));
-				}
+		if (commentFuture != null) {
 
+			Object createResult = KanboardAsyncClient.get(commentFuture);
+			if (!createResult.equals(Boolean.FALSE)) {
+				logger.println(Messages.comment_create_sucess(taskCommentValue, createResult, taskRefValue));
 			}
 
-			if (StringUtils.isNotBlank(taskSubtaskTitleValue)) {
+		}
 
-				Object jsonSubtasksResult = Kanboard.getAllSubtasks(session, logger, taskId, debugMode);
+		if (subtaskFuture != null) {
 
-				Map<String, JSONObject> existingSubtasks = new HashMap<String, JSONObject>();
+			try {
 
-				if (jsonSubtasksResult instanceof JSONArray) {
-					JSONArray jsonSubtasks = (JSONArray) jsonSubtasksResult;
-					for (int i = 0; i < jsonSubtasks.size(); i++) {
-						JSONObject jsonSubtask = (JSONObject) jsonSubtasks.get(i);
-						String title = String.valueOf(jsonSubtask.get(Kanboard.TITLE));
-						String userId = String.valueOf(jsonSubtask.get(Kanboard.USER_ID));
-						String key = title + "|" + userId;
-						existingSubtasks.put(key, jsonSubtask);
-					}
+				Object createResult = KanboardAsyncClient.get(subtaskFuture);
+				if (!createResult.equals(Boolean.FALSE)) {
+					logger.println(
+							Messages.subtask_create_sucess(taskSubtaskTitleValue, createResult, taskRefValue));
 				}
 
-				String key = taskSubtaskTitleValue + "|" + ownerId;
+			} catch (IOException e) {
 
-				if (!existingSubtasks.containsKey(key)) {
+				logger.println(e.getMessage());
 
-					try {
+			}
 
-						Object createResult = Kanboard.createSubtask(session, logger, taskId, ownerId,
-								taskSubtaskTitleValue, debugMode);
-						if (!createResult.equals(Boolean.FALSE)) {
-							logger.println(
-									Messages.subtask_create_sucess(taskSubtaskTitleValue, createResult, taskRefValue));
-						}
+		}
 
-					} catch (IOException e) {
+		return new PublishedTask(String.valueOf(taskId), taskURL);
+	}
 
-						logger.println(e.getMessage());
+	private static JSONArray refreshProjectColumns(JSONRPC2Session session, PrintStream logger, Object projectId,
+			boolean debugMode) throws JSONRPC2SessionException, AbortException {
+		KanboardMetadataCache.invalidateProjectColumns(session, projectId);
+		return KanboardMetadataCache.getProjectColumns(session, logger, projectId, debugMode);
+	}
 
-					}
+	/**
+	 * Publisher fields expanded for a build.
+	 */
+	static final class TaskValues {
+
+		String projectIdentifier;
+		String taskReference;
+		String taskTitle;
+		String taskDescription;
+		String taskColumn;
+		String taskOwner;
+		String taskCreator;
+		String taskSwimlane;
+		String taskColor;
+		String taskComment;
+		String taskSubtaskTitle;
+		String[] taskTags;
+		String[] taskAttachments;
+		String[] taskExternalLinks;
+
+		synchronized TaskValues copy() {
+			TaskValues copy = new TaskValues();
+			copy.projectIdentifier = projectIdentifier;
+			copy.taskReference = taskReference;
+			copy.taskTitle = taskTitle;
+			copy.taskDescription = taskDescription;
+			copy.taskColumn = taskColumn;
+			copy.taskOwner = taskOwner;
+			copy.taskCreator = taskCreator;
+			copy.taskSwimlane = taskSwimlane;
+			copy.taskColor = taskColor;
+			copy.taskComment = taskComment;
+			copy.taskSubtaskTitle = taskSubtaskTitle;
+			copy.taskTags = taskTags;
+			copy.taskAttachments = taskAttachments;
+			copy.taskExternalLinks = taskExternalLinks;
+			return copy;
+		}
 
-				}
+		/**
+		 * Removes the comment once it has been added to the task. The parts of
+		 * a publication are removed as they are applied, so that a publication
+		 * failing midway is journaled with the remaining parts only.
+		 */
+		synchronized void removeComment() {
+			taskComment = null;
+		}
 
+		synchronized void removeSubtask() {
+			taskSubtaskTitle = null;
+		}
+
+		/**
+		 * Removes the column once the task has been moved, if it is relative
+		 * to the current column of the task.
+		 */
+		synchronized void removeRelativeMove() {
+			if (isRelative(taskColumn)) {
+				taskColumn = null;
 			}
+		}
 
-			// Export task URL environment variable
-			if (StringUtils.isNotBlank(taskURL)) {
-				Utils.exportEnvironmentVariable(build, KanboardPlugin.KANBOARD_TASKURL_ENVVAR, taskURL);
-				logger.println(Messages.taskurl_envvar_success(taskURL, KanboardPlugin.KANBOARD_TASKURL_ENVVAR));
+		synchronized void removeAttachment(String pattern) {
+			taskAttachments = (String[]) ArrayUtils.removeElement(taskAttachments, pattern);
+		}
+
+		synchronized void removeExternalLink(String link) {
+			taskExternalLinks = (String[]) ArrayUtils.removeElement(taskExternalLinks, link);
+		}
+
+		/**
+		 * @return key identifying the task on the given endpoint
+		 */
+		String getKey(String endpoint) {
+			return endpoint + "|" + projectIdentifier + "|" + taskReference;
+		}
+
+		/**
+		 * @return true if this publication can take the place of the given
+		 *         earlier one once merged with it, that is if the earlier one
+		 *         neither adds anything to the task nor moves it relatively to
+		 *         its current column, and if this one doesn't move the task
+		 *         relatively to the column the earlier one moves it to
+		 */
+		boolean canSupersede(TaskValues earlier) {
+			return StringUtils.isBlank(earlier.taskComment) && StringUtils.isBlank(earlier.taskSubtaskTitle)
+					&& ArrayUtils.isEmpty(earlier.taskTags) && ArrayUtils.isEmpty(earlier.taskAttachments)
+					&& ArrayUtils.isEmpty(earlier.taskExternalLinks) && !isRelative(earlier.taskColumn)
+					&& !(isRelative(taskColumn) && isPosition(earlier.taskColumn));
+		}
+
+		/**
+		 * Takes the values of the given earlier publication for the fields
+		 * this one leaves unchanged, so that superseding it doesn't drop them.
+		 */
+		void mergeEarlier(TaskValues earlier) {
+			taskTitle = merge(taskTitle, earlier.taskTitle);
+			taskDescription = merge(taskDescription, earlier.taskDescription);
+			taskOwner = merge(taskOwner, earlier.taskOwner);
+			taskCreator = merge(taskCreator, earlier.taskCreator);
+			taskColor = merge(taskColor, earlier.taskColor);
+			if (!isPosition(taskColumn) && isPosition(earlier.taskColumn)) {
+				taskColumn = earlier.taskColumn;
 			}
+			if (!isPosition(taskSwimlane) && isPosition(earlier.taskSwimlane)) {
+				taskSwimlane = earlier.taskSwimlane;
+			}
+		}
 
-		} catch (JSONRPC2SessionException | IOException | InterruptedException | MacroEvaluationException e) {
+		private static String merge(String value, String earlierValue) {
+			return StringUtils.isBlank(value) ? earlierValue : value;
+		}
 
-			throw new AbortException(e.getMessage());
+		/**
+		 * @return true if the column or swimlane value moves the task
+		 */
+		private static boolean isPosition(String value) {
+			return StringUtils.isNotEmpty(value) && Utils.isInteger(value) && (Integer.parseInt(value) != 0);
+		}
 
+		private static boolean isRelative(String value) {
+			return StringUtils.startsWithAny(StringUtils.trim(value), new String[] { "+", "-" });
 		}
+	}
 
-		return true;
+	/**
+	 * Identifier and URL of a published task.
+	 */
+	static final class PublishedTask {
+
+		private final String id;
+		private final String url;
+
+		PublishedTask(String id, String url) {
+			this.id = id;
+			this.url = url;
+		}
+
+		String getId() {
+			return id;
+		}
+
+		String getURL() {
+			return url;
+		}
+	}
+
+	/**
+	 * Task files, links and subtasks listing calls, only added to the batch when
+	 * the corresponding publisher field is set.
+	 */
+	private static final class TaskListings {
+
+		KanboardBatch.Call<JSONArray> files;
+		KanboardBatch.Call<JSONArray> links;
+		KanboardBatch.Call<Object> subtasks;
+
+		TaskListings(KanboardBatch batch, Object taskId, String[] attachments, String[] externalLinks,
+				String subtaskTitle) {
+			if (ArrayUtils.isNotEmpty(attachments)) {
+				this.files = Kanboard.getAllTaskFiles(batch, taskId);
+			}
+			if (ArrayUtils.isNotEmpty(externalLinks)) {
+				this.links = Kanboard.getAllExternalTaskLinks(batch, taskId);
+			}
+			if (StringUtils.isNotBlank(subtaskTitle)) {
+				this.subtasks = Kanboard.getAllSubtasks(batch, taskId);
+			}
+		}
 	}
 
 	@Extension
@@ -0,0 +1,161 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.ArrayUtils;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+import net.minidev.json.JSONObject;
+
+/**
+ * Desired state of an existing task, diffed against the task fetched from
+ * Kanboard. Only the fields which changed are sent, the task update and move
+ * being sent together in a single batch request, and nothing is sent when the
+ * task already matches its desired state.
+ */
+final class KanboardTaskReconciler {
+
+	private final Object projectId;
+	private final JSONObject jsonTask;
+
+	private final Map<String, Object> changes = new LinkedHashMap<String, Object>();
+	private boolean updateWanted;
+
+	private boolean moveWanted;
+	private boolean moveChanged;
+	private Object columnId;
+	private Object position;
+	private Object swimlaneId;
+
+	private int sentRequests;
+
+	/**
+	 * @param jsonTask
+	 *            the task as currently stored by Kanboard
+	 */
+	KanboardTaskReconciler(Object projectId, JSONObject jsonTask) {
+		this.projectId = projectId;
+		this.jsonTask = jsonTask;
+	}
+
+	/**
+	 * Sets the desired value of a task field, kept only if it differs from the
+	 * current one.
+	 *
+	 * @param value
+	 *            the desired value, null to leave the field unchanged
+	 */
+	void setField(String field, Object value) {
+		if (value == null) {
+			return;
+		}
+		updateWanted = true;
+		// Kanboard returns all values as strings
+		if (!String.valueOf(value).equals(String.valueOf(jsonTask.get(field)))) {
+			changes.put(field, value);
+		}
+	}
+
+	/**
+	 * @param currentTags
+	 *            the current task tags
+	 * @param tags
+	 *            the desired task tags, null to leave them unchanged
+	 */
+	void setTags(String[] currentTags, String[] tags) {
+		if (tags == null) {
+			return;
+		}
+		updateWanted = true;
+		if (!ArrayUtils.isEquals(currentTags, tags)) {
+			changes.put(Kanboard.TAGS, tags);
+		}
+	}
+
+	/**
+	 * @param changed
+	 *            true if the task is not already in the given column and
+	 *            swimlane
+	 */
+	void setPosition(Object columnId, Object position, Object swimlaneId, boolean changed) {
+		this.moveWanted = true;
+		this.moveChanged = changed;
+		this.columnId = columnId;
+		this.position = position;
+		this.swimlaneId = swimlaneId;
+	}
+
+	boolean isChanged(String field) {
+		return changes.containsKey(field);
+	}
+
+	boolean isMoved() {
+		return moveChanged;
+	}
+
+	boolean isUpToDate() {
+		return changes.isEmpty() && !moveChanged;
+	}
+
+	/**
+	 * @return number of changed fields, the task position counting as one
+	 */
+	int getChangedFields() {
+		return changes.size() + (moveChanged ? 1 : 0);
+	}
+
+	/**
+	 * @return number of requests sent by {@link #send}
+	 */
+	int getSentRequests() {
+		return sentRequests;
+	}
+
+	/**
+	 * @return number of requests saved compared to an update and a move being
+	 *         sent whenever the corresponding fields are set
+	 */
+	int getSavedRequests() {
+		return (updateWanted ? 1 : 0) + (moveWanted ? 1 : 0) - sentRequests;
+	}
+
+	/**
+	 * Sends the changed fields, if any.
+	 *
+	 * @throws AbortException
+	 *             if Kanboard couldn't update or move the task
+	 */
+	void send(JSONRPC2Session session, PrintStream logger, boolean debugMode)
+			throws JSONRPC2SessionException, AbortException {
+
+		if (isUpToDate()) {
+			return;
+		}
+
+		Object taskId = jsonTask.get(Kanboard.ID);
+		KanboardBatch batch = new KanboardBatch();
+		KanboardBatch.Call<Boolean> updateCall = null;
+		if (!changes.isEmpty()) {
+			updateCall = Kanboard.updateTask(batch, taskId, changes);
+		}
+		KanboardBatch.Call<Boolean> moveCall = null;
+		if (moveChanged) {
+			moveCall = Kanboard.moveTaskPosition(batch, projectId, taskId, columnId, position, swimlaneId);
+		}
+		batch.send(session, logger, debugMode);
+		sentRequests++;
+
+		if (updateCall != null) {
+			updateCall.get();
+		}
+		if (moveCall != null) {
+			moveCall.get();
+		}
+	}
+
+}
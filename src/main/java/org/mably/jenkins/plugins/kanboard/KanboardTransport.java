@@ -0,0 +1,121 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * HTTP transport used by {@link KanboardSession} to post JSON-RPC requests to a
+ * Kanboard endpoint.
+ */
+public interface KanboardTransport {
+
+	/**
+	 * Thrown when the server answers with an unexpected HTTP status.
+	 */
+	class HttpStatusException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+
+		public HttpStatusException(int status, String statusText) {
+			super("Unexpected HTTP response: " + status + " " + statusText);
+			this.status = status;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return true if the error is on the server side, or if the client
+		 *         has been asked to slow down, and the request may succeed
+		 *         later
+		 */
+		public boolean isTransient() {
+			return (status >= 500) || (status == 429);
+		}
+	}
+
+	/**
+	 * Request body written straight to the connection, it may be written more
+	 * than once if the request is retried.
+	 */
+	abstract class RequestBody {
+
+		/**
+		 * @return length in bytes of the body
+		 */
+		public abstract long getContentLength();
+
+		public abstract void writeTo(OutputStream out) throws IOException;
+
+		/**
+		 * @return a body holding the UTF-8 encoded string
+		 */
+		public static RequestBody of(String body) {
+			final byte[] bytes = body.getBytes(Charset.forName("UTF-8"));
+			return new RequestBody() {
+				@Override
+				public long getContentLength() {
+					return bytes.length;
+				}
+
+				@Override
+				public void writeTo(OutputStream out) throws IOException {
+					out.write(bytes);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Consumes a response body as it is received.
+	 */
+	interface ResponseHandler<T> {
+
+		T handle(Reader reader) throws IOException;
+
+	}
+
+	/**
+	 * Reads the whole response body as a string.
+	 */
+	ResponseHandler<String> STRING_RESPONSE = new ResponseHandler<String>() {
+		@Override
+		public String handle(Reader reader) throws IOException {
+			return IOUtils.toString(reader);
+		}
+	};
+
+	/**
+	 * Posts a JSON request body to the given URL.
+	 *
+	 * @return the response body
+	 * @throws IOException
+	 *             if the request couldn't be sent or if the server didn't
+	 *             answer with a successful HTTP status
+	 */
+	String post(URL url, Map<String, String> headers, String body) throws IOException;
+
+	/**
+	 * Posts a JSON request body to the given URL, the request body is written
+	 * as it is sent and the response body is handed to the given handler
+	 * without being buffered.
+	 *
+	 * @return the handler result
+	 * @throws IOException
+	 *             if the request couldn't be sent, if the server didn't answer
+	 *             with a successful HTTP status or if the handler failed to
+	 *             read the response
+	 */
+	<T> T post(URL url, Map<String, String> headers, RequestBody body, ResponseHandler<T> handler)
+			throws IOException;
+
+}
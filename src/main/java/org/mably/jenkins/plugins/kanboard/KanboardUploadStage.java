@@ -0,0 +1,83 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2SessionException;
+
+import hudson.AbortException;
+
+/**
+ * Runs the upload of task attachments and external links a few at a time,
+ * through a {@link KanboardParallelStage}. A failing upload doesn't prevent the
+ * other ones from being sent.
+ */
+final class KanboardUploadStage {
+
+	static final int DEFAULT_PARALLELISM = 4;
+
+	private static volatile int parallelism = DEFAULT_PARALLELISM;
+
+	/**
+	 * A single upload.
+	 */
+	abstract static class Upload {
+
+		/**
+		 * @param logger
+		 *            buffer of the upload log messages
+		 */
+		abstract void run(PrintStream logger) throws JSONRPC2SessionException, IOException, InterruptedException;
+
+	}
+
+	private final KanboardParallelStage<Void> stage;
+
+	/**
+	 * @param logger
+	 *            the build logger
+	 */
+	KanboardUploadStage(PrintStream logger) {
+		this.stage = new KanboardParallelStage<Void>(logger, getParallelism());
+	}
+
+	/**
+	 * @param value
+	 *            maximum number of uploads run at the same time, 1 to run them
+	 *            one after the other
+	 */
+	static void configure(int value) {
+		parallelism = Math.max(value, 1);
+	}
+
+	/**
+	 * @return number of uploads run at the same time, never more than the
+	 *         number of requests allowed in flight per endpoint
+	 */
+	static int getParallelism() {
+		return KanboardParallelStage.limit(parallelism);
+	}
+
+	void add(final Upload upload) {
+		stage.add(new KanboardParallelStage.Task<Void>() {
+			@Override
+			Void run(PrintStream logger) throws JSONRPC2SessionException, IOException, InterruptedException {
+				upload.run(logger);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Runs all the uploads added so far, writing their log messages to the
+	 * build log in order.
+	 *
+	 * @throws JSONRPC2SessionException
+	 *             the first non I/O failure in upload order, once all the
+	 *             uploads are done
+	 */
+	void run() throws JSONRPC2SessionException, AbortException, InterruptedException {
+		stage.run();
+	}
+
+}
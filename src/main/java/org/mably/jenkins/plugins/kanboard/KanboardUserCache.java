@@ -0,0 +1,127 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.util.concurrent.TimeUnit;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
+
+import hudson.AbortException;
+import net.minidev.json.JSONObject;
+
+/**
+ * Controller wide cache of Kanboard user names and ids, resolved in both
+ * directions. Unknown users are also cached for a short time so that a
+ * misspelled user name doesn't trigger a lookup on every build.
+ */
+public final class KanboardUserCache {
+
+	static final int DEFAULT_TTL = 600;
+
+	private static final int MAX_ENTRIES = 1000;
+	private static final long NEGATIVE_TTL = 60;
+
+	private static final Object NOT_FOUND = new Object();
+
+	private static final KanboardCache<String, Object> IDS_BY_NAME = new KanboardCache<String, Object>(MAX_ENTRIES,
+			DEFAULT_TTL, TimeUnit.SECONDS);
+
+	private static final KanboardCache<String, Object> NAMES_BY_ID = new KanboardCache<String, Object>(MAX_ENTRIES,
+			DEFAULT_TTL, TimeUnit.SECONDS);
+
+	private KanboardUserCache() {
+	}
+
+	static void setTtl(int ttl) {
+		IDS_BY_NAME.setTtl(ttl, TimeUnit.SECONDS);
+		NAMES_BY_ID.setTtl(ttl, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * A user lookup, either already resolved from the cache or pending on a
+	 * batched call.
+	 */
+	public static final class Lookup {
+
+		private final String endpoint;
+		private final boolean byName;
+		private final String key;
+		private final Object cachedValue;
+		private final KanboardBatch.Call<JSONObject> call;
+
+		private Lookup(String endpoint, boolean byName, String key, Object cachedValue,
+				KanboardBatch.Call<JSONObject> call) {
+			this.endpoint = endpoint;
+			this.byName = byName;
+			this.key = key;
+			this.cachedValue = cachedValue;
+			this.call = call;
+		}
+
+		/**
+		 * @return the user id for a lookup by name, the user name for a lookup
+		 *         by id, or null if the user doesn't exist
+		 */
+		public Object get() throws AbortException {
+			if (call == null) {
+				return (cachedValue == NOT_FOUND) ? null : cachedValue;
+			}
+			JSONObject jsonUser = call.get();
+			if (jsonUser == null) {
+				if (byName) {
+					IDS_BY_NAME.put(getKey(endpoint, key), NOT_FOUND, NEGATIVE_TTL, TimeUnit.SECONDS);
+				} else {
+					NAMES_BY_ID.put(getKey(endpoint, key), NOT_FOUND, NEGATIVE_TTL, TimeUnit.SECONDS);
+				}
+				return null;
+			}
+			Object userId = jsonUser.get(Kanboard.ID);
+			Object username = jsonUser.get(Kanboard.USERNAME);
+			if ((userId != null) && (username != null)) {
+				IDS_BY_NAME.put(getKey(endpoint, String.valueOf(username)), userId);
+				NAMES_BY_ID.put(getKey(endpoint, String.valueOf(userId)), String.valueOf(username));
+			}
+			return byName ? userId : ((username == null) ? null : String.valueOf(username));
+		}
+	}
+
+	private static String getKey(String endpoint, String key) {
+		return endpoint + "|" + key;
+	}
+
+	/**
+	 * Resolves a user id from its name, the lookup being added to the batch
+	 * only if it isn't already cached.
+	 */
+	public static Lookup getUserIdByName(KanboardBatch batch, JSONRPC2Session session, String username) {
+		String endpoint = String.valueOf(session.getURL());
+		Object userId = IDS_BY_NAME.get(getKey(endpoint, username));
+		if (userId == null) {
+			return new Lookup(endpoint, true, username, null, Kanboard.getUserByName(batch, username));
+		} else {
+			return new Lookup(endpoint, true, username, userId, null);
+		}
+	}
+
+	/**
+	 * Resolves a user name from its id, the lookup being added to the batch
+	 * only if it isn't already cached.
+	 */
+	public static Lookup getUsernameById(KanboardBatch batch, JSONRPC2Session session, Object userId) {
+		String endpoint = String.valueOf(session.getURL());
+		String key = String.valueOf(userId);
+		Object username = NAMES_BY_ID.get(getKey(endpoint, key));
+		if (username == null) {
+			return new Lookup(endpoint, false, key, null, Kanboard.getUser(batch, userId));
+		} else {
+			return new Lookup(endpoint, false, key, username, null);
+		}
+	}
+
+	public static long getHits() {
+		return IDS_BY_NAME.getHits() + NAMES_BY_ID.getHits();
+	}
+
+	public static long getMisses() {
+		return IDS_BY_NAME.getMisses() + NAMES_BY_ID.getMisses();
+	}
+
+}
@@ -3,9 +3,9 @@ package org.mably.jenkins.plugins.kanboard;
 import static hudson.Util.fixNull;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
@@ -15,23 +15,14 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
 import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 
-import com.cloudbees.plugins.credentials.CredentialsMatcher;
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
-import com.cloudbees.plugins.credentials.CredentialsProvider;
-import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.thetransactioncompany.jsonrpc2.client.ConnectionConfigurator;
 import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
 
@@ -40,7 +31,6 @@ import hudson.ProxyConfiguration;
 import hudson.model.AbstractBuild;
 import hudson.model.EnvironmentContributingAction;
 import hudson.model.TaskListener;
-import hudson.security.ACL;
 import hudson.slaves.EnvironmentVariablesNodeProperty;
 import hudson.slaves.NodeProperty;
 import hudson.slaves.NodePropertyDescriptor;
@@ -51,14 +41,14 @@ public class Utils {
 
 	private static final String COMMA = ",";
 
-	private static final Logger logger = Logger.getLogger(Utils.class.getName());
-
 	static final String LOG_SEPARATOR = "----------";
 
 	static final Pattern ENV_VAR_PATTERN = Pattern.compile("\\$\\w+");
 
 	public static final class ApiAuthenticator implements ConnectionConfigurator {
 
+		static final String HEADER = "X-API-Auth";
+
 		private String xApiAuthToken;
 
 		public ApiAuthenticator(String apiToken) {
@@ -71,9 +61,13 @@ public class Utils {
 			}
 		}
 
+		public String getHeaderValue() {
+			return this.xApiAuthToken;
+		}
+
 		@Override
 		public void configure(HttpURLConnection connection) {
-			connection.addRequestProperty("X-API-Auth", this.xApiAuthToken);
+			connection.addRequestProperty(HEADER, this.xApiAuthToken);
 		}
 	}
 
@@ -104,19 +98,19 @@ public class Utils {
 
 	public static JSONRPC2Session initJSONRPCSession(String endpoint, String apiToken, String apiTokenCredentialId)
 			throws MalformedURLException {
+		return initJSONRPCSession(endpoint, apiToken, apiTokenCredentialId, null);
+	}
+
+	public static JSONRPC2Session initJSONRPCSession(String endpoint, String apiToken, String apiTokenCredentialId,
+			PrintStream logger) throws MalformedURLException {
 
 		// The JSON-RPC 2.0 server URL
 		URL serverURL = new URL(fixNull(endpoint));
 
-		// Create new JSON-RPC 2.0 client session
-		JSONRPC2Session session = new JSONRPC2Session(serverURL);
-		String token = getTokenToUse(apiTokenCredentialId, apiToken);
-		session.setConnectionConfigurator(new Utils.ApiAuthenticator(token));
-
-		Proxy proxy = getJenkinsProxy(serverURL);
-		if (proxy != null) {
-			session.getOptions().setProxy(proxy);
-		}
+		// Create new JSON-RPC 2.0 client session on top of the shared transport
+		KanboardSession session = new KanboardSession(serverURL, KanboardSession.getDefaultTransport(),
+				KanboardCredentialsCache.getAuthenticator(apiTokenCredentialId, apiToken));
+		session.setLogger(logger);
 
 		return session;
 	}
@@ -151,19 +145,6 @@ public class Utils {
 		return valid;
 	}
 
-	public static String encodeFileToBase64Binary(File file) throws IOException {
-		byte[] bytes = FileUtils.readFileToByteArray(file);
-		byte[] encoded = Base64.encodeBase64(bytes);
-		return new String(encoded, Charset.defaultCharset());
-	}
-
-	public static File decodeBase64ToBinaryFile(String path, String base64String) throws IOException {
-		File file = new File(path);
-		byte[] data = Base64.decodeBase64(base64String);
-		FileUtils.writeByteArrayToFile(file, data);
-		return file;
-	}
-
 	public static void exportEnvironmentVariable(AbstractBuild<?, ?> build, final String name, final String value) {
 
 		build.addAction(new EnvironmentContributingAction() {
@@ -192,6 +173,22 @@ public class Utils {
 		return Utils.class.getPackage().getImplementationVersion();
 	}
 
+	/**
+	 * @return the non blank items of a comma separated line, without any
+	 *         macro expansion, null if there are none
+	 */
+	public static String[] getCSVStringValue(String line) {
+		List<String> itemValues = new ArrayList<String>();
+		if (StringUtils.isNotBlank(line)) {
+			for (String item : line.split(COMMA)) {
+				if (StringUtils.isNotBlank(item)) {
+					itemValues.add(item);
+				}
+			}
+		}
+		return (itemValues.size() == 0) ? null : itemValues.toArray(new String[itemValues.size()]);
+	}
+
 	public static String[] getCSVStringValue(AbstractBuild<?, ?> build, TaskListener listener, String line)
 			throws MacroEvaluationException, IOException, InterruptedException {
 		return getCSVStringValue(build, listener, line, 0);
@@ -222,54 +219,6 @@ public class Utils {
 		}
 	}
 
-	private static String getTokenToUse(String apiTokenCredentialId, String apiToken) {
-		String token = apiToken;
-		if (apiTokenCredentialId != null && !apiTokenCredentialId.isEmpty()) {
-			StringCredentials credentials = lookupCredentials(apiTokenCredentialId);
-			if (credentials != null) {
-				logger.fine("Using Integration Token Credential ID.");
-				token = credentials.getSecret().getPlainText();
-			}
-		}
-		return token;
-	}
-
-	private static StringCredentials lookupCredentials(String credentialId) {
-		List<StringCredentials> credentials = CredentialsProvider.lookupCredentials(StringCredentials.class,
-				Jenkins.getInstance(), ACL.SYSTEM, Collections.<DomainRequirement> emptyList());
-		CredentialsMatcher matcher = CredentialsMatchers.withId(credentialId);
-		return CredentialsMatchers.firstOrNull(credentials, matcher);
-	}
-
-	public static byte[] fetchURL(URL url) {
-
-		byte[] data = null;
-
-		HttpURLConnection conn = null;
-		try {
-
-			Proxy proxy = getJenkinsProxy(url);
-			if (proxy == null) {
-				conn = (HttpURLConnection) url.openConnection();
-			} else {
-				conn = (HttpURLConnection) url.openConnection(proxy);
-			}
-
-			conn.setRequestMethod("GET");
-
-			data = IOUtils.toByteArray(conn.getInputStream());
-
-		} catch (IOException e) {
-
-		} finally {
-			if (conn != null) {
-				conn.disconnect();
-			}
-		}
-
-		return data;
-	}
-
 	public static EnvVars getNodeEnvVars() {
 
 		EnvVars envVars = new EnvVars();
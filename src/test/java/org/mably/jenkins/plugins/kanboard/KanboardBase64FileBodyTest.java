@@ -0,0 +1,119 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import hudson.FilePath;
+
+public class KanboardBase64FileBodyTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static JSONRPC2Request createTaskFile() {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("project_id", 1);
+		params.put("task_id", 2);
+		params.put("filename", "report \"final\".txt");
+		return new JSONRPC2Request("createTaskFile", params, 5L);
+	}
+
+	private File write(byte[] content) throws IOException {
+		File file = tmp.newFile();
+		FileUtils.writeByteArrayToFile(file, content);
+		return file;
+	}
+
+	@Test
+	public void encodedLength() {
+		assertEquals(0, KanboardBase64FileBody.getEncodedLength(0));
+		assertEquals(4, KanboardBase64FileBody.getEncodedLength(1));
+		assertEquals(4, KanboardBase64FileBody.getEncodedLength(2));
+		assertEquals(4, KanboardBase64FileBody.getEncodedLength(3));
+		assertEquals(8, KanboardBase64FileBody.getEncodedLength(4));
+		assertEquals(Base64.encodeBase64(new byte[100000]).length, KanboardBase64FileBody.getEncodedLength(100000));
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		Random random = new Random(42);
+		for (int length : new int[] { 0, 1, 2, 3, 4, 1000, 65537 }) {
+			byte[] content = new byte[length];
+			random.nextBytes(content);
+			File file = write(content);
+
+			KanboardBase64FileBody body = new KanboardBase64FileBody(createTaskFile(), "blob", new FilePath(file),
+					length);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			body.writeTo(out);
+			assertEquals(body.getContentLength(), out.size());
+
+			JSONRPC2Request sent = JSONRPC2Request.parse(out.toString("UTF-8"));
+			assertEquals("createTaskFile", sent.getMethod());
+			assertEquals(5L, ((Number) sent.getID()).longValue());
+			assertEquals("report \"final\".txt", sent.getNamedParams().get("filename"));
+			assertEquals(2L, ((Number) sent.getNamedParams().get("task_id")).longValue());
+			assertArrayEquals(content, Base64.decodeBase64((String) sent.getNamedParams().get("blob")));
+		}
+	}
+
+	@Test
+	public void bodyCanBeWrittenAgain() throws Exception {
+		byte[] content = "retried".getBytes("UTF-8");
+		KanboardBase64FileBody body = new KanboardBase64FileBody(createTaskFile(), "blob",
+				new FilePath(write(content)), content.length);
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		body.writeTo(first);
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		body.writeTo(second);
+		assertArrayEquals(first.toByteArray(), second.toByteArray());
+	}
+
+	@Test(expected = IOException.class)
+	public void fileShorterThanAnnounced() throws Exception {
+		byte[] content = new byte[10];
+		new KanboardBase64FileBody(createTaskFile(), "blob", new FilePath(write(content)), content.length + 1)
+				.writeTo(new ByteArrayOutputStream());
+	}
+
+	@Test
+	public void fileIsNotEncodedInMemory() throws Exception {
+		int length = 4 * 1024 * 1024;
+		byte[] content = new byte[length];
+		new Random(42).nextBytes(content);
+		KanboardBase64FileBody body = new KanboardBase64FileBody(createTaskFile(), "blob",
+				new FilePath(write(content)), length);
+		body.writeTo(NullOutputStream.NULL_OUTPUT_STREAM); // Warm up
+
+		long start = getAllocatedBytes();
+		body.writeTo(NullOutputStream.NULL_OUTPUT_STREAM);
+		assertTrue(getAllocatedBytes() - start < length);
+	}
+
+	/**
+	 * @return bytes allocated so far by the current thread
+	 */
+	static long getAllocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+}
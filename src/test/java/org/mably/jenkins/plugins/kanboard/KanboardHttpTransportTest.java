@@ -0,0 +1,112 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class KanboardHttpTransportTest {
+
+	private static final String RESPONSE = "{\"jsonrpc\":\"2.0\",\"result\":true,\"id\":1}";
+
+	private static final Map<String, String> HEADERS = Collections.singletonMap("X-API-Auth", "token");
+
+	private KanboardStubServer server;
+
+	@After
+	public void stopServer() {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void postsRequestAndReadsResponse() throws IOException {
+		server = new KanboardStubServer(KanboardStubServer.respond(200, RESPONSE));
+		String request = "{\"jsonrpc\":\"2.0\",\"method\":\"getVersion\",\"id\":1}";
+
+		assertEquals(RESPONSE, KanboardHttpTransport.get().post(server.getURL(), HEADERS, request));
+		assertEquals(request, server.getLastRequest());
+		assertEquals("token", server.getLastExchange().getRequestHeaders().getFirst("X-API-Auth"));
+		assertEquals("application/json; charset=UTF-8",
+				server.getLastExchange().getRequestHeaders().getFirst("Content-Type"));
+	}
+
+	@Test
+	public void decodesUndeclaredCharsetAsUtf8() throws IOException {
+		String response = "{\"jsonrpc\":\"2.0\",\"result\":\"T\u00e2che \u00e0 d\u00e9ployer\",\"id\":1}";
+		server = new KanboardStubServer(KanboardStubServer.respond(200, response));
+		assertEquals(response, KanboardHttpTransport.get().post(server.getURL(), HEADERS, "{}"));
+	}
+
+	@Test
+	public void decodesDeclaredCharset() throws IOException {
+		String response = "{\"jsonrpc\":\"2.0\",\"result\":\"R\u00e9sum\u00e9\",\"id\":1}";
+		server = new KanboardStubServer(
+				KanboardStubServer.respond(200, "application/json; charset=\"ISO-8859-1\"", response));
+		assertEquals(response, KanboardHttpTransport.get().post(server.getURL(), HEADERS, "{}"));
+	}
+
+	@Test
+	public void charsetOfContentType() {
+		assertEquals("UTF-8", KanboardHttpTransport.getCharset(null));
+		assertEquals("UTF-8", KanboardHttpTransport.getCharset("application/json"));
+		assertEquals("ISO-8859-1", KanboardHttpTransport.getCharset("text/html; Charset=ISO-8859-1"));
+		assertEquals("utf-16", KanboardHttpTransport.getCharset("application/json;charset=\"utf-16\""));
+	}
+
+	@Test
+	public void reusesPooledConnections() throws IOException {
+		server = new KanboardStubServer(KanboardStubServer.respond(200, RESPONSE));
+		for (int i = 0; i < 10; i++) {
+			assertEquals(RESPONSE, KanboardHttpTransport.get().post(server.getURL(), HEADERS, "{}"));
+		}
+		assertEquals(10, server.getRequestCount());
+		assertEquals(1, server.getConnectionCount());
+	}
+
+	@Test
+	public void reportsUnexpectedStatuses() throws IOException {
+		server = new KanboardStubServer(KanboardStubServer.respond(503, "{}"));
+		try {
+			KanboardHttpTransport.get().post(server.getURL(), HEADERS, "{}");
+			fail();
+		} catch (KanboardTransport.HttpStatusException e) {
+			assertEquals(503, e.getStatus());
+			assertTrue(e.isTransient());
+		}
+		assertFalse(new KanboardTransport.HttpStatusException(401, "Unauthorized").isTransient());
+		assertTrue(new KanboardTransport.HttpStatusException(429, "Too Many Requests").isTransient());
+	}
+
+	@Test
+	public void doesNotResendWhenConnectionIsDropped() throws IOException {
+		// The connection is closed without any response, once the request
+		// has been received
+		server = new KanboardStubServer(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) {
+				exchange.close();
+			}
+		});
+		try {
+			KanboardHttpTransport.get().post(server.getURL(), HEADERS,
+					"{\"jsonrpc\":\"2.0\",\"method\":\"createComment\",\"id\":1}");
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+		assertEquals(1, server.getRequestCount());
+	}
+
+}
@@ -0,0 +1,171 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+public class KanboardJsonReaderTest {
+
+	private static KanboardJsonReader reader(String json) {
+		return new KanboardJsonReader(new StringReader(json));
+	}
+
+	@Test
+	public void readsEscapes() throws IOException {
+		assertEquals("a\"b\\c/d\b\f\n\r\t", reader("\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\"").nextString());
+	}
+
+	@Test
+	public void readsUnicodeEscapes() throws IOException {
+		assertEquals("\u00e9\u20ac!", reader("\"\\u00e9\\u20AC!\"").nextString());
+	}
+
+	@Test(expected = KanboardJsonReader.MalformedJsonException.class)
+	public void rejectsInvalidUnicodeEscapes() throws IOException {
+		reader("\"\\u12G4\"").nextString();
+	}
+
+	@Test(expected = KanboardJsonReader.MalformedJsonException.class)
+	public void rejectsUnterminatedStrings() throws IOException {
+		reader("\"abc").nextString();
+	}
+
+	@Test
+	public void readsNumbersAsJsonSmartTypes() throws IOException {
+		JSONArray numbers = (JSONArray) reader(
+				"[0, -12, 2147483647, 2147483648, 9223372036854775807, 9223372036854775808, 1.5, -2e3]").readValue();
+		assertEquals(Integer.valueOf(0), numbers.get(0));
+		assertEquals(Integer.valueOf(-12), numbers.get(1));
+		assertEquals(Integer.valueOf(Integer.MAX_VALUE), numbers.get(2));
+		assertEquals(Long.valueOf(2147483648L), numbers.get(3));
+		assertEquals(Long.valueOf(Long.MAX_VALUE), numbers.get(4));
+		assertEquals(new BigInteger("9223372036854775808"), numbers.get(5));
+		assertEquals(Double.valueOf(1.5), numbers.get(6));
+		assertEquals(Double.valueOf(-2000), numbers.get(7));
+	}
+
+	@Test
+	public void readsLiterals() throws IOException {
+		JSONArray literals = (JSONArray) reader("[true, false, null]").readValue();
+		assertEquals(Boolean.TRUE, literals.get(0));
+		assertEquals(Boolean.FALSE, literals.get(1));
+		assertEquals(null, literals.get(2));
+	}
+
+	@Test
+	public void skipsNestedValues() throws IOException {
+		KanboardJsonReader reader = reader(
+				"{\"skip\": {\"a\": [1, \"x\\\"]}\", {\"b\": null}], \"c\": -1.5e2}, \"keep\": \"v\"}");
+		reader.beginObject();
+		assertTrue(reader.hasNext());
+		assertEquals("skip", reader.nextName());
+		reader.skipValue();
+		assertTrue(reader.hasNext());
+		assertEquals("keep", reader.nextName());
+		assertEquals("v", reader.nextString());
+		assertFalse(reader.hasNext());
+		reader.endObject();
+	}
+
+	@Test
+	public void projectsArrayResults() throws IOException {
+		JSONRPC2Response response = reader("{\"jsonrpc\": \"2.0\", \"id\": 1, \"result\": ["
+				+ "{\"id\": 1, \"title\": \"t\", \"reference\": \"R1\", \"nested\": {\"x\": [1, 2]}},"
+				+ "{\"id\": 2, \"reference\": \"R2\"}]}")
+						.readResponse(KanboardJsonReader.projection(Kanboard.ID, Kanboard.REFERENCE));
+		assertTrue(response.indicatesSuccess());
+		assertEquals(Integer.valueOf(1), response.getID());
+		JSONArray tasks = (JSONArray) response.getResult();
+		assertEquals(2, tasks.size());
+		JSONObject first = (JSONObject) tasks.get(0);
+		assertEquals(2, first.size());
+		assertEquals(Integer.valueOf(1), first.get(Kanboard.ID));
+		assertEquals("R1", first.get(Kanboard.REFERENCE));
+		assertEquals("R2", ((JSONObject) tasks.get(1)).get(Kanboard.REFERENCE));
+	}
+
+	@Test
+	public void projectionKeepsOtherResults() throws IOException {
+		JSONRPC2Response response = reader("{\"jsonrpc\": \"2.0\", \"result\": false, \"id\": 7}")
+				.readResponse(KanboardJsonReader.projection(Kanboard.ID));
+		assertEquals(Boolean.FALSE, response.getResult());
+		assertEquals(Integer.valueOf(7), response.getID());
+	}
+
+	@Test
+	public void readsErrorResponses() throws IOException {
+		JSONRPC2Response response = reader("{\"jsonrpc\": \"2.0\", \"id\": 3, "
+				+ "\"error\": {\"code\": -32601, \"message\": \"Method not found\"}}")
+						.readResponse(KanboardJsonReader.projection(Kanboard.ID));
+		assertFalse(response.indicatesSuccess());
+		assertEquals(-32601, response.getError().getCode());
+		assertEquals("Method not found", response.getError().getMessage());
+		assertEquals(Integer.valueOf(3), response.getID());
+	}
+
+	@Test
+	public void rejectsResponsesWithoutResult() throws IOException {
+		try {
+			reader("{\"jsonrpc\": \"2.0\", \"id\": 3}").readResponse(KanboardJsonReader.projection(Kanboard.ID));
+			fail();
+		} catch (KanboardJsonReader.MalformedJsonException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void countsConsumedCharacters() throws IOException {
+		KanboardJsonReader reader = reader("[{\"a\": 1}, {\"b\": 22}]");
+		reader.beginArray();
+		assertEquals(1, reader.getOffset());
+		reader.readValue();
+		assertEquals(9, reader.getOffset());
+		assertTrue(reader.hasNext());
+		reader.readValue();
+		assertEquals(20, reader.getOffset());
+		assertFalse(reader.hasNext());
+		reader.endArray();
+		assertEquals(21, reader.getOffset());
+		assertEquals(21, reader.getCount());
+	}
+
+	@Test
+	public void projectionAllocatesLessThanFullResponse() throws Exception {
+		StringBuilder sb = new StringBuilder("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[");
+		for (int i = 0; i < 5000; i++) {
+			sb.append((i == 0) ? "{" : ",{").append("\"id\":").append(i);
+			sb.append(",\"reference\":\"REF-").append(i).append('"');
+			for (int field = 0; field < 20; field++) {
+				sb.append(",\"field").append(field).append("\":\"value ").append(field).append('"');
+			}
+			sb.append('}');
+		}
+		String json = sb.append("]}").toString();
+		JSONRPC2Response.parse(json); // Warm up
+		reader(json).readResponse(KanboardJsonReader.projection(Kanboard.REFERENCE));
+
+		long start = KanboardBase64FileBodyTest.getAllocatedBytes();
+		JSONRPC2Response.parse(json);
+		long materialized = KanboardBase64FileBodyTest.getAllocatedBytes() - start;
+
+		start = KanboardBase64FileBodyTest.getAllocatedBytes();
+		JSONRPC2Response response = reader(json).readResponse(KanboardJsonReader.projection(Kanboard.REFERENCE));
+		long streamed = KanboardBase64FileBodyTest.getAllocatedBytes() - start;
+
+		assertEquals(5000, ((JSONArray) response.getResult()).size());
+		assertTrue(streamed < materialized);
+	}
+
+}
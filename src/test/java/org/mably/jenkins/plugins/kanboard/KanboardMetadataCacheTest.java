@@ -0,0 +1,58 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.net.URL;
+
+import org.junit.Test;
+
+import com.thetransactioncompany.jsonrpc2.client.JSONRPC2Session;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+public class KanboardMetadataCacheTest {
+
+	private static JSONObject column(String id, String title) {
+		JSONObject column = new JSONObject();
+		column.put("id", id);
+		column.put("title", title);
+		return column;
+	}
+
+	@Test
+	public void cachedColumnsAreCopies() throws Exception {
+		JSONRPC2Session session = new JSONRPC2Session(new URL("http://localhost/metadata-cache-test/jsonrpc.php"));
+		JSONArray columns = new JSONArray();
+		columns.add(column("1", "Backlog"));
+		KanboardMetadataCache.putProjectColumns(session, 1, columns);
+
+		// Changes made to the stored and to the returned columns aren't cached
+		columns.add(column("2", "Ready"));
+		JSONArray cached = KanboardMetadataCache.getCachedProjectColumns(session, 1);
+		assertEquals(1, cached.size());
+		((JSONObject) cached.get(0)).put("title", "Done");
+		cached.clear();
+
+		JSONArray again = KanboardMetadataCache.getCachedProjectColumns(session, 1);
+		assertNotSame(cached, again);
+		assertEquals(1, again.size());
+		assertEquals("Backlog", ((JSONObject) again.get(0)).get("title"));
+	}
+
+	@Test
+	public void copyIsDeep() {
+		JSONObject nested = new JSONObject();
+		nested.put("board", "http://localhost/board");
+		JSONObject project = new JSONObject();
+		project.put("id", "1");
+		project.put("url", nested);
+
+		JSONObject copy = KanboardMetadataCache.copy(project);
+		((JSONObject) copy.get("url")).put("board", "changed");
+		assertEquals("http://localhost/board", nested.get("board"));
+		assertEquals("1", copy.get("id"));
+	}
+
+}
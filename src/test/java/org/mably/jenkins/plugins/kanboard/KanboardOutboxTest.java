@@ -0,0 +1,218 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KanboardOutboxTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String ENDPOINT = "http://kanboard.example.com/jsonrpc.php";
+
+	private static final PrintStream LOGGER = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private File file;
+
+	@Before
+	public void createJournal() throws IOException {
+		file = new File(tmp.newFolder(), "kanboard-outbox.journal");
+	}
+
+	private static KanboardTaskPublisher.TaskValues values(String reference) {
+		KanboardTaskPublisher.TaskValues values = new KanboardTaskPublisher.TaskValues();
+		values.projectIdentifier = "PROJ";
+		values.taskReference = reference;
+		values.taskTitle = "Title of " + reference;
+		values.taskTags = new String[] { "build", "nightly" };
+		return values;
+	}
+
+	private static void add(KanboardOutbox outbox, String reference) throws Exception {
+		outbox.add(ENDPOINT, false, null, values(reference), LOGGER);
+	}
+
+	/**
+	 * @return values only setting task fields, which a later publication of
+	 *         the task may supersede
+	 */
+	private static KanboardTaskPublisher.TaskValues fields(String column, String owner, String title) {
+		KanboardTaskPublisher.TaskValues values = new KanboardTaskPublisher.TaskValues();
+		values.projectIdentifier = "PROJ";
+		values.taskReference = "REF-1";
+		values.taskColumn = column;
+		values.taskOwner = owner;
+		values.taskTitle = title;
+		return values;
+	}
+
+	private int countLines() throws IOException {
+		return FileUtils.readLines(file, UTF8.name()).size();
+	}
+
+	@Test
+	public void loadRestoresPendingEntriesInOrder() throws Exception {
+		KanboardOutbox outbox = KanboardOutbox.open(file);
+		add(outbox, "REF-1");
+		add(outbox, "REF-2");
+		add(outbox, "REF-3");
+
+		List<KanboardOutbox.Entry> entries = KanboardOutbox.open(file).getEntries();
+		assertEquals(3, entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			KanboardOutbox.Entry entry = entries.get(i);
+			assertEquals("REF-" + (i + 1), entry.getTaskReference());
+			assertEquals("PROJ", entry.getProjectIdentifier());
+			assertEquals(ENDPOINT, entry.getEndpoint());
+			assertEquals(entries.get(0).getId() + i, entry.getId());
+		}
+	}
+
+	@Test
+	public void loadSkipsDiscardedEntries() throws Exception {
+		KanboardOutbox outbox = KanboardOutbox.open(file);
+		add(outbox, "REF-1");
+		add(outbox, "REF-2");
+		outbox.discard(outbox.getEntries().get(0).getId());
+
+		List<KanboardOutbox.Entry> entries = KanboardOutbox.open(file).getEntries();
+		assertEquals(1, entries.size());
+		assertEquals("REF-2", entries.get(0).getTaskReference());
+		assertEquals(3, countLines());
+	}
+
+	@Test
+	public void emptyOutboxCompactsJournal() throws Exception {
+		KanboardOutbox outbox = KanboardOutbox.open(file);
+		add(outbox, "REF-1");
+		add(outbox, "REF-2");
+		for (KanboardOutbox.Entry entry : outbox.getEntries()) {
+			outbox.discard(entry.getId());
+		}
+
+		assertEquals(0, file.length());
+		assertEquals(0, KanboardOutbox.open(file).getDepth());
+	}
+
+	@Test
+	public void journalMostlyCompletedIsCompacted() throws Exception {
+		KanboardOutbox outbox = KanboardOutbox.open(file);
+		for (int i = 0; i < 1100; i++) {
+			add(outbox, "REF-" + i);
+		}
+		List<KanboardOutbox.Entry> entries = outbox.getEntries();
+		for (int i = 0; i < 400; i++) {
+			outbox.discard(entries.get(i).getId());
+		}
+
+		// 1500 records without compaction
+		assertTrue(countLines() < 1100);
+		entries = KanboardOutbox.open(file).getEntries();
+		assertEquals(700, entries.size());
+		assertEquals("REF-400", entries.get(0).getTaskReference());
+		assertEquals("REF-1099", entries.get(699).getTaskReference());
+	}
+
+	@Test
+	public void truncatedRecordIsIgnored() throws Exception {
+		KanboardOutbox outbox = KanboardOutbox.open(file);
+		add(outbox, "REF-1");
+		add(outbox, "REF-2");
+		FileUtils.writeStringToFile(file, "{\"type\":\"add\",\"id\":3,\"endpoint\":\"htt", UTF8.name(), true);
+
+		outbox = KanboardOutbox.open(file);
+		assertEquals(2, outbox.getDepth());
+
+		// Appended after the truncated record, not to it
+		add(outbox, "REF-3");
+		List<KanboardOutbox.Entry> entries = KanboardOutbox.open(file).getEntries();
+		assertEquals(3, entries.size());
+		assertEquals("REF-3", entries.get(2).getTaskReference());
+	}
+
+	@Test
+	public void supersededEntryIsMergedIntoLaterOne() throws Exception {
+		KanboardOutbox outbox = KanboardOutbox.open(file);
+		outbox.add(ENDPOINT, false, null, fields("3", "alice", "Old title"), LOGGER);
+		outbox.add(ENDPOINT, false, null, fields("", null, "New title"), LOGGER);
+
+		KanboardTaskPublisher.TaskValues values = outbox.nextEntry().getValues();
+		assertEquals("3", values.taskColumn);
+		assertEquals("alice", values.taskOwner);
+		assertEquals("New title", values.taskTitle);
+		assertEquals(1, outbox.getDepth());
+		assertEquals(1, outbox.getCoalescedCount());
+
+		List<KanboardOutbox.Entry> entries = KanboardOutbox.open(file).getEntries();
+		assertEquals(1, entries.size());
+		assertEquals("3", entries.get(0).getValues().taskColumn);
+		assertEquals("alice", entries.get(0).getValues().taskOwner);
+		assertEquals("New title", entries.get(0).getValues().taskTitle);
+	}
+
+	@Test
+	public void entryMovingTaskIsNotSupersededByRelativeMove() throws Exception {
+		KanboardOutbox outbox = KanboardOutbox.open(file);
+		outbox.add(ENDPOINT, false, null, fields("3", null, null), LOGGER);
+		outbox.add(ENDPOINT, false, null, fields("+1", null, null), LOGGER);
+
+		assertEquals("3", outbox.nextEntry().getValues().taskColumn);
+		assertEquals(2, outbox.getDepth());
+		assertEquals(0, outbox.getCoalescedCount());
+	}
+
+	@Test
+	public void entryAddingToTaskIsNotSuperseded() throws Exception {
+		KanboardOutbox outbox = KanboardOutbox.open(file);
+		add(outbox, "REF-1");
+		outbox.add(ENDPOINT, false, null, fields("2", null, null), LOGGER);
+
+		assertEquals("REF-1", outbox.nextEntry().getTaskReference());
+		assertEquals(2, outbox.getDepth());
+	}
+
+	@Test
+	public void appliedPartsAreNotJournaled() throws Exception {
+		KanboardTaskPublisher.TaskValues values = fields("+1", null, "Title");
+		values.taskComment = "Built";
+		values.taskSubtaskTitle = "Deploy";
+		values.taskExternalLinks = new String[] { "http://a.example.com", "http://b.example.com|related|B" };
+		values.removeComment();
+		values.removeRelativeMove();
+		values.removeExternalLink("http://a.example.com");
+
+		KanboardOutbox.open(file).add(ENDPOINT, false, null, values, LOGGER);
+
+		KanboardTaskPublisher.TaskValues journaled = KanboardOutbox.open(file).getEntries().get(0).getValues();
+		assertNull(journaled.taskComment);
+		assertNull(journaled.taskColumn);
+		assertEquals("Deploy", journaled.taskSubtaskTitle);
+		assertEquals("Title", journaled.taskTitle);
+		assertArrayEquals(new String[] { "http://b.example.com|related|B" }, journaled.taskExternalLinks);
+	}
+
+	@Test
+	public void absoluteMoveIsKeptOnceApplied() {
+		KanboardTaskPublisher.TaskValues values = fields("3", null, null);
+		values.removeRelativeMove();
+		assertEquals("3", values.taskColumn);
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP server standing in for a Kanboard JSON-RPC endpoint.
+ */
+final class KanboardStubServer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	private volatile String lastRequest;
+	private volatile HttpExchange lastExchange;
+
+	/**
+	 * Starts a server answering every request with the given handler.
+	 */
+	KanboardStubServer(final HttpHandler handler) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requestCount.incrementAndGet();
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				InputStream in = exchange.getRequestBody();
+				try {
+					lastRequest = IOUtils.toString(in, UTF8.name());
+				} finally {
+					in.close();
+				}
+				lastExchange = exchange;
+				handler.handle(exchange);
+			}
+		});
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * @return a handler answering with the given status and JSON body, without
+	 *         any declared charset as Kanboard does
+	 */
+	static HttpHandler respond(int status, String body) {
+		return respond(status, "application/json", body);
+	}
+
+	/**
+	 * @return a handler answering with the given status and body, encoded with
+	 *         the charset of the given content type
+	 */
+	static HttpHandler respond(final int status, final String contentType, final String body) {
+		return new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] bytes = body.getBytes(KanboardHttpTransport.getCharset(contentType));
+				exchange.getResponseHeaders().set("Content-Type", contentType);
+				exchange.sendResponseHeaders(status, bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(bytes);
+				} finally {
+					out.close();
+				}
+			}
+		};
+	}
+
+	URL getURL() throws IOException {
+		return new URL("http", "127.0.0.1", server.getAddress().getPort(), "/jsonrpc.php");
+	}
+
+	int getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return number of connections the requests were received on
+	 */
+	int getConnectionCount() {
+		return clientPorts.size();
+	}
+
+	/**
+	 * @return body of the last request received
+	 */
+	String getLastRequest() {
+		return lastRequest;
+	}
+
+	/**
+	 * @return the last request received, for its headers
+	 */
+	HttpExchange getLastExchange() {
+		return lastExchange;
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,157 @@
+package org.mably.jenkins.plugins.kanboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.After;
+import org.junit.Test;
+
+public class KanboardTaskCoalescerTest {
+
+	private static final String ENDPOINT = "http://kanboard.example.com/jsonrpc.php";
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	private static KanboardTaskPublisher.TaskValues values(String column) {
+		KanboardTaskPublisher.TaskValues values = new KanboardTaskPublisher.TaskValues();
+		values.projectIdentifier = "PROJ";
+		values.taskReference = "REF-1";
+		values.taskColumn = column;
+		return values;
+	}
+
+	@Test
+	public void laterPublicationKeepsEarlierFields() {
+		KanboardTaskPublisher.TaskValues earlier = values("3");
+		earlier.taskTitle = "Old title";
+		earlier.taskOwner = "alice";
+		earlier.taskSwimlane = "2";
+		earlier.taskColor = Kanboard.RED;
+		KanboardTaskPublisher.TaskValues later = values("");
+		later.taskTitle = "New title";
+		later.taskSwimlane = "0";
+
+		assertTrue(later.canSupersede(earlier));
+		later.mergeEarlier(earlier);
+		assertEquals("New title", later.taskTitle);
+		assertEquals("3", later.taskColumn);
+		assertEquals("alice", later.taskOwner);
+		assertEquals("2", later.taskSwimlane);
+		assertEquals(Kanboard.RED, later.taskColor);
+	}
+
+	@Test
+	public void laterPositionWins() {
+		KanboardTaskPublisher.TaskValues earlier = values("3");
+		KanboardTaskPublisher.TaskValues later = values("1");
+		later.mergeEarlier(earlier);
+		assertEquals("1", later.taskColumn);
+	}
+
+	@Test
+	public void additionsAndRelativeMovesAreNotSuperseded() {
+		KanboardTaskPublisher.TaskValues earlier = values(null);
+		earlier.taskComment = "Built";
+		assertFalse(values(null).canSupersede(earlier));
+
+		assertFalse(values(null).canSupersede(values("+1")));
+		assertFalse(values("+1").canSupersede(values("3")));
+		assertTrue(values("+1").canSupersede(values(null)));
+		assertTrue(values("-1").canSupersede(values("0")));
+	}
+
+	@Test
+	public void queuedPublicationIsMergedIntoLaterOne() throws Exception {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final KanboardTaskPublisher.PublishedTask first = new KanboardTaskPublisher.PublishedTask("1", "first");
+		Future<KanboardTaskPublisher.PublishedTask> inFlight = publish(values("2"), new CountDownLatch(0),
+				new KanboardTaskCoalescer.Publication() {
+					@Override
+					public KanboardTaskPublisher.PublishedTask publish() throws InterruptedException {
+						started.countDown();
+						release.await();
+						return first;
+					}
+				});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		final AtomicInteger runs = new AtomicInteger();
+		KanboardTaskPublisher.TaskValues earlier = values("3");
+		earlier.taskOwner = "alice";
+		CountDownLatch earlierQueued = new CountDownLatch(1);
+		Future<KanboardTaskPublisher.PublishedTask> superseded = publish(earlier, earlierQueued,
+				new KanboardTaskCoalescer.Publication() {
+					@Override
+					public KanboardTaskPublisher.PublishedTask publish() {
+						runs.incrementAndGet();
+						return null;
+					}
+				});
+		assertTrue(earlierQueued.await(10, TimeUnit.SECONDS));
+
+		final KanboardTaskPublisher.TaskValues later = values("");
+		later.taskTitle = "New title";
+		final AtomicReference<String> publishedColumn = new AtomicReference<String>();
+		final KanboardTaskPublisher.PublishedTask last = new KanboardTaskPublisher.PublishedTask("1", "last");
+		CountDownLatch laterQueued = new CountDownLatch(1);
+		Future<KanboardTaskPublisher.PublishedTask> latest = publish(later, laterQueued,
+				new KanboardTaskCoalescer.Publication() {
+					@Override
+					public KanboardTaskPublisher.PublishedTask publish() {
+						publishedColumn.set(later.taskColumn);
+						return last;
+					}
+				});
+		assertTrue(laterQueued.await(10, TimeUnit.SECONDS));
+
+		release.countDown();
+		assertSame(first, inFlight.get(10, TimeUnit.SECONDS));
+		assertSame(last, latest.get(10, TimeUnit.SECONDS));
+		assertSame(last, superseded.get(10, TimeUnit.SECONDS));
+		assertEquals(0, runs.get());
+		assertEquals("3", publishedColumn.get());
+		assertEquals("alice", later.taskOwner);
+		assertEquals("New title", later.taskTitle);
+	}
+
+	/**
+	 * Publishes from another thread, the latch being released once the
+	 * publication is waiting for the one in flight.
+	 */
+	private Future<KanboardTaskPublisher.PublishedTask> publish(final KanboardTaskPublisher.TaskValues values,
+			final CountDownLatch queued, final KanboardTaskCoalescer.Publication publication) {
+		final PrintStream logger = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM) {
+			@Override
+			public void println(String x) {
+				queued.countDown();
+			}
+		};
+		return executor.submit(new Callable<KanboardTaskPublisher.PublishedTask>() {
+			@Override
+			public KanboardTaskPublisher.PublishedTask call() throws Exception {
+				return KanboardTaskCoalescer.publish(ENDPOINT, values, logger, publication);
+			}
+		});
+	}
+
+}